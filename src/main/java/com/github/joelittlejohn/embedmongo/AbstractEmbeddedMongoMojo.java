@@ -27,6 +27,10 @@ import de.flapdoodle.embed.mongo.distribution.Version;
 import de.flapdoodle.embed.mongo.distribution.Versions;
 import de.flapdoodle.embed.mongo.distribution.Feature;
 
+import com.mongodb.MongoClient;
+
+import java.io.IOException;
+import java.util.Map;
 import java.util.stream.Stream;
 
 /**
@@ -84,6 +88,8 @@ public abstract class AbstractEmbeddedMongoMojo extends AbstractMojo {
     @Parameter( defaultValue = "${project}", readonly = true )
     protected MavenProject project;
 
+    private MongoClientRegistry ownClients;
+
     public AbstractEmbeddedMongoMojo() {
     }
 
@@ -96,7 +102,14 @@ public abstract class AbstractEmbeddedMongoMojo extends AbstractMojo {
         if(skip) {
             onSkip();
         } else {
-            executeStart();
+            try {
+                executeStart();
+            } finally {
+                if (ownClients != null) {
+                    ownClients.close();
+                    ownClients = null;
+                }
+            }
         }
     }
 
@@ -105,7 +118,15 @@ public abstract class AbstractEmbeddedMongoMojo extends AbstractMojo {
     }
 
     protected IFeatureAwareVersion getVersion() {
-        String versionEnumName = this.version.toUpperCase().replaceAll("\\.", "_");
+        return getVersion(this.version, this.features);
+    }
+
+    /**
+     * Resolves a MongoDB version and the flapdoodle features to download it
+     * with, e.g. as configured for another execution of this plugin.
+     */
+    IFeatureAwareVersion getVersion(final String version, String featureNames) {
+        String versionEnumName = version.toUpperCase().replaceAll("\\.", "_");
 
         if (versionEnumName.charAt(0) != 'V') {
             versionEnumName = "V" + versionEnumName;
@@ -113,18 +134,18 @@ public abstract class AbstractEmbeddedMongoMojo extends AbstractMojo {
 
 
         Feature[] features = new Feature[0];
-        if (this.features != null) {
+        if (featureNames != null) {
             try {
-                features = Stream.of(this.features.split(",")).map(String::trim).map(String::toUpperCase).map(Feature::valueOf).toArray(Feature[]::new);
+                features = Stream.of(featureNames.split(",")).map(String::trim).map(String::toUpperCase).map(Feature::valueOf).toArray(Feature[]::new);
             } catch (IllegalArgumentException e) {
-                getLog().warn("Unrecognised feature '" + this.features + ". Attempting download anyway...");
+                getLog().warn("Unrecognised feature '" + featureNames + ". Attempting download anyway...");
             }
         }
 
         try {
             return Versions.withFeatures(Version.valueOf(versionEnumName), features);
         } catch (IllegalArgumentException e) {
-            getLog().warn("Unrecognised MongoDB version '" + this.version + "', this might be a new version that we don't yet know about. Attempting download anyway...");
+            getLog().warn("Unrecognised MongoDB version '" + version + "', this might be a new version that we don't yet know about. Attempting download anyway...");
             return Versions.withFeatures(() -> version, features);
         }
     }
@@ -156,6 +177,82 @@ public abstract class AbstractEmbeddedMongoMojo extends AbstractMojo {
         project.getProperties().put("embedmongo.port", String.valueOf(port));
     }
 
+    /**
+     * @return the client for the mongod on {@link #getPort()}, borrowed from
+     *         the registry set up by the start goal, or from one that lasts
+     *         for this execution only when the start goal did not run; it
+     *         must not be closed
+     */
+    MongoClient getClient() {
+        Map<?, ?> context = getPluginContext();
+        MongoClientRegistry clients = context == null ? null : (MongoClientRegistry) context.get(StartMojo.CLIENT_REGISTRY_CONTEXT_PROPERTY_NAME);
+        if (clients == null) {
+            synchronized (this) {
+                if (ownClients == null) {
+                    ownClients = new MongoClientRegistry(MongoClientRegistry.options(MongoClientRegistry.DEFAULT_POOL_SIZE, MongoClientRegistry.DEFAULT_CONNECT_TIMEOUT, null));
+                }
+                clients = ownClients;
+            }
+        }
+        return clients.get("localhost", getPort());
+    }
+
+    /**
+     * @return the data directory cache set up by the start goal, or
+     *         {@code null} if data caching is not enabled
+     */
+    DataDirectoryCache getDataDirectoryCache() {
+        Map<?, ?> context = getPluginContext();
+        return context == null ? null : (DataDirectoryCache) context.get(StartMojo.DATA_CACHE_CONTEXT_PROPERTY_NAME);
+    }
+
+    /**
+     * @return {@code true} if the start goal restored already seeded data, so
+     *         seeding goals have nothing left to do
+     */
+    boolean isSeededFromCache() {
+        DataDirectoryCache dataCache = getDataDirectoryCache();
+        MongodDaemon daemon = getDaemon();
+        return (dataCache != null && dataCache.isRestored()) || (daemon != null && daemon.isSeeded());
+    }
+
+    /**
+     * @return the daemon the start goal started or attached to, or
+     *         {@code null} if daemon mode is not enabled
+     */
+    MongodDaemon getDaemon() {
+        Map<?, ?> context = getPluginContext();
+        return context == null ? null : (MongodDaemon) context.get(StartMojo.DAEMON_CONTEXT_PROPERTY_NAME);
+    }
+
+    /**
+     * Called by seeding goals once they have completed successfully, so the
+     * data directory can be cached after the last of them.
+     */
+    void onSeedCompleted() {
+        MongodDaemon daemon = getDaemon();
+        if (daemon != null) {
+            try {
+                if (daemon.seedCompleted()) {
+                    getLog().info("Recorded the seed data of mongod daemon " + daemon.getHash() + ", later builds will skip seeding");
+                }
+            } catch (IOException e) {
+                getLog().warn("Unable to record the seed data of mongod daemon " + daemon.getHash(), e);
+            }
+        }
+
+        DataDirectoryCache dataCache = getDataDirectoryCache();
+
+        if (dataCache != null && dataCache.seedCompleted()) {
+            getLog().info("Caching seeded data directory with fingerprint " + dataCache.getFingerprint());
+            try {
+                dataCache.snapshot(getClient());
+            } catch (IOException e) {
+                getLog().warn("Unable to cache seeded data directory " + dataCache.getDataDirectory(), e);
+            }
+        }
+    }
+
     public boolean isSkip() {
         return skip;
     }
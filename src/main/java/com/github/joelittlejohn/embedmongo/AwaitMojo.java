@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * When invoked, this goal waits for a mongo instance started by the
+ * <code>start-async</code> goal to be ready, failing the build if it could
+ * not be started.
+ */
+@Mojo(name="await", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
+public class AwaitMojo extends AbstractEmbeddedMongoMojo {
+
+    /**
+     * The maximum time to wait for mongo to be ready, in milliseconds.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.awaitTimeout", defaultValue = "300000")
+    private long awaitTimeout;
+
+    @Override
+    public void executeStart() throws MojoExecutionException, MojoFailureException {
+        Future<?> startup = (Future<?>) getPluginContext().get(StartMojo.ASYNC_START_CONTEXT_PROPERTY_NAME);
+
+        if (startup == null) {
+            throw new MojoFailureException("No mongod startup found, it appears embedmongo:start-async was not called");
+        }
+
+        long start = System.nanoTime();
+        await(startup, awaitTimeout);
+        getLog().info("mongod ready after waiting " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
+
+    /**
+     * Waits for a background start to complete, rethrowing the exception it
+     * failed with.
+     */
+    static void await(Future<?> startup, long timeoutMillis) throws MojoExecutionException, MojoFailureException {
+        try {
+            startup.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MojoExecutionException) {
+                throw (MojoExecutionException) cause;
+            } else if (cause instanceof MojoFailureException) {
+                throw (MojoFailureException) cause;
+            }
+            throw new MojoExecutionException("Unable to start the mongod", cause);
+        } catch (TimeoutException e) {
+            throw new MojoExecutionException("mongod was not ready within " + timeoutMillis + "ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for mongod to start", e);
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Deletes data directories off the build's critical path. The deletions run
+ * on a daemon thread, and a shutdown hook gives outstanding ones time to
+ * finish before the JVM exits.
+ */
+final class BackgroundDeletion {
+
+    private static final long EXIT_TIMEOUT_SECONDS = 60;
+
+    private static ExecutorService executor;
+
+    private BackgroundDeletion() {
+    }
+
+    static synchronized void delete(final File directory, final Log log) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("embedmongo-delete"));
+            Runtime.getRuntime().addShutdownHook(new Thread(BackgroundDeletion::awaitCompletion, "embedmongo-delete-hook"));
+        }
+
+        executor.submit(() -> {
+            try {
+                if (Files.exists(directory.toPath())) {
+                    FileUtils.delete(directory.toPath());
+                }
+            } catch (IOException e) {
+                log.warn("Unable to delete data directory " + directory, e);
+            }
+        });
+    }
+
+    static synchronized void awaitCompletion() {
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.extract.IExtractedFileSet;
+import de.flapdoodle.embed.process.extract.ImmutableExtractedFileSet;
+import de.flapdoodle.embed.process.store.IArtifactStore;
+
+/**
+ * A machine-wide cache of extracted MongoDB binaries, one directory per
+ * version, platform and bit size. Each execution gets its own install
+ * directory whose files are hard links into the cache (or symbolic links,
+ * or copies, where the file system doesn't allow that), so an archive is
+ * only unpacked once per machine.
+ * <p>
+ * Changes to the cache are made while holding a lock on a file in the cache
+ * directory, so concurrent builds never see a half-populated entry. The least
+ * recently used versions are evicted once the cache grows past its size cap.
+ */
+class BinaryCache implements IArtifactStore {
+
+    private static final String LOCK_FILE = ".lock";
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final ReentrantLock JVM_LOCK = new ReentrantLock();
+
+    private final IArtifactStore delegate;
+    private final Command command;
+    private final File cacheDirectory;
+    private final long maxSize;
+
+    /**
+     * @param delegate the store that downloads and extracts distributions
+     *            missing from the cache
+     * @param command the executable the delegate extracts, distributions
+     *            hold several
+     * @param maxSize the size in bytes above which least recently used
+     *            entries are evicted
+     */
+    BinaryCache(IArtifactStore delegate, Command command, File cacheDirectory, long maxSize) {
+        this.delegate = delegate;
+        this.command = command;
+        this.cacheDirectory = cacheDirectory;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public boolean checkDistribution(Distribution distribution) throws IOException {
+        return isCached(distribution) || delegate.checkDistribution(distribution);
+    }
+
+    @Override
+    public IExtractedFileSet extractFileSet(Distribution distribution) throws IOException {
+        Path entry = entry(distribution);
+
+        try (Locked locked = lock()) {
+            if (!Files.exists(entry.resolve(COMPLETE_MARKER))) {
+                populate(distribution, entry);
+                evict(entry);
+            }
+            Files.setLastModifiedTime(entry.resolve(COMPLETE_MARKER), FileTime.fromMillis(System.currentTimeMillis()));
+            return install(entry);
+        }
+    }
+
+    @Override
+    public void removeFileSet(Distribution distribution, IExtractedFileSet files) {
+        try {
+            deleteIfExists(files.baseDir().toPath());
+        } catch (IOException e) {
+            // best effort, the install directory lives in the temp directory
+        }
+    }
+
+    boolean isCached(Distribution distribution) {
+        return Files.exists(entry(distribution).resolve(COMPLETE_MARKER));
+    }
+
+    private Path entry(Distribution distribution) {
+        String key = command.commandName() + "-" + distribution.getVersion().asInDownloadPath() + "-" + distribution.getPlatform() + "-" + distribution.getBitsize();
+        return cacheDirectory.toPath().resolve(key.toLowerCase().replaceAll("[^a-z0-9._-]", "_"));
+    }
+
+    /**
+     * Copies a freshly extracted file set into the cache, staging it next to
+     * the entry and moving it into place so a failure leaves no partial entry.
+     */
+    private void populate(Distribution distribution, Path entry) throws IOException {
+        IExtractedFileSet extracted = delegate.extractFileSet(distribution);
+        Path staging = Files.createTempDirectory(cacheDirectory.toPath(), "staging-");
+        try {
+            for (File file : files(extracted)) {
+                Path target = staging.resolve(file.getName());
+                Files.copy(file.toPath(), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            Files.write(staging.resolve(COMPLETE_MARKER), extracted.executable().getName().getBytes(StandardCharsets.UTF_8));
+
+            deleteIfExists(entry);
+            Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            deleteIfExists(staging);
+            delegate.removeFileSet(distribution, extracted);
+        }
+    }
+
+    private static List<File> files(IExtractedFileSet extracted) {
+        List<File> files = new ArrayList<File>();
+        files.add(extracted.executable());
+        for (File library : extracted.files(FileType.Library)) {
+            if (!files.contains(library)) {
+                files.add(library);
+            }
+        }
+        return files;
+    }
+
+    private static void deleteIfExists(Path path) throws IOException {
+        if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            FileUtils.delete(path);
+        }
+    }
+
+    /**
+     * Links the files of a cache entry into a new install directory.
+     */
+    private static IExtractedFileSet install(Path entry) throws IOException {
+        Path install = Files.createTempDirectory("embedmongo-bin-");
+        ImmutableExtractedFileSet.Builder builder = ImmutableExtractedFileSet.builder(install.toFile()).baseDirIsGenerated(true);
+
+        String executable = new String(Files.readAllBytes(entry.resolve(COMPLETE_MARKER)), StandardCharsets.UTF_8);
+
+        List<Path> cached;
+        try (Stream<Path> stream = Files.list(entry)) {
+            cached = stream.filter(path -> !path.getFileName().toString().equals(COMPLETE_MARKER)).collect(Collectors.toList());
+        }
+
+        for (Path source : cached) {
+            Path target = install.resolve(source.getFileName());
+            link(source, target);
+            if (source.getFileName().toString().equals(executable)) {
+                builder.executable(target.toFile());
+            } else {
+                builder.file(FileType.Library, target.toFile());
+            }
+        }
+        return builder.build();
+    }
+
+    private static void link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            try {
+                Files.createSymbolicLink(target, source);
+            } catch (IOException | UnsupportedOperationException e2) {
+                Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries, other than the given one,
+     * until the cache fits within its size cap.
+     */
+    private void evict(Path keep) throws IOException {
+        List<Path> entries;
+        try (Stream<Path> stream = Files.list(cacheDirectory.toPath())) {
+            entries = stream.filter(path -> Files.exists(path.resolve(COMPLETE_MARKER))).collect(Collectors.toList());
+        }
+
+        long total = 0;
+        for (Path entry : entries) {
+            total += size(entry);
+        }
+
+        entries.sort(Comparator.comparing(BinaryCache::lastUsed));
+        for (Path entry : entries) {
+            if (total <= maxSize) {
+                break;
+            }
+            if (!entry.equals(keep)) {
+                total -= size(entry);
+                deleteIfExists(entry);
+            }
+        }
+    }
+
+    private static FileTime lastUsed(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry.resolve(COMPLETE_MARKER));
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    static long size(Path directory) throws IOException {
+        final long[] size = new long[1];
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                size[0] += attributes.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size[0];
+    }
+
+    /**
+     * Takes the lock that guards the cache against other threads of this
+     * build as well as other builds on the same machine.
+     */
+    private Locked lock() throws IOException {
+        Files.createDirectories(cacheDirectory.toPath());
+        JVM_LOCK.lock();
+        try {
+            FileChannel channel = FileChannel.open(cacheDirectory.toPath().resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                return new Locked(channel, channel.lock());
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            JVM_LOCK.unlock();
+            throw e;
+        }
+    }
+
+    private static final class Locked implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        Locked(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lock.release();
+                channel.close();
+            } finally {
+                JVM_LOCK.unlock();
+            }
+        }
+    }
+
+}
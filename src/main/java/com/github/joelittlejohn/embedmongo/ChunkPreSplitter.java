@@ -0,0 +1,260 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Splits a sharded collection into chunks ahead of an import and spreads
+ * them over the shards. The split points are quantiles of shard key values
+ * sampled from the import file, so the import loads every shard at once
+ * instead of filling a single chunk and leaving it to the balancer.
+ */
+class ChunkPreSplitter {
+
+    static final int SAMPLE_SIZE = 10000;
+
+    private final MongoClient mongos;
+    private final Log log;
+    private final Random random = new Random();
+
+    ChunkPreSplitter(MongoClient mongos, Log log) {
+        this.mongos = mongos;
+        this.log = log;
+    }
+
+    /**
+     * @return the import to run: unchanged when the collection is not
+     *         sharded, otherwise without {@code dropOnImport}, as dropping the
+     *         collection is done here so that it can be sharded again
+     */
+    ImportDataConfig prepare(String database, ImportDataConfig importData) throws IOException, MojoExecutionException {
+        String namespace = database + "." + importData.getCollection();
+        Document sharded = mongos.getDatabase("config").getCollection("collections").find(new Document("_id", namespace)).first();
+        if (sharded == null || Boolean.TRUE.equals(sharded.getBoolean("dropped"))) {
+            return importData;
+        }
+
+        Document key = sharded.get("key", Document.class);
+        boolean hashed = key.values().contains("hashed");
+        MongoDatabase admin = mongos.getDatabase("admin");
+        List<String> shards = shardNames(admin);
+
+        if (importData.getDropOnImport()) {
+            mongos.getDatabase(database).getCollection(importData.getCollection()).drop();
+            admin.runCommand(reshardCommand(sharded, shards.size()));
+        }
+
+        if (!hashed && key.size() == 1) {
+            String field = key.keySet().iterator().next();
+            List<BsonValue> sample = sample(new File(importData.getFile()), importData.isJsonArray(), field);
+            Comparator<BsonValue> order = order(sample);
+            if (order == null) {
+                log.info("Not pre-splitting " + namespace + ", the values of " + field + " in '" + importData.getFile() + "' cannot be ordered");
+            } else {
+                sample.sort(order);
+                List<BsonValue> points = splitPoints(sample, order, shards.size() * ShardedCluster.INITIAL_CHUNKS_PER_SHARD);
+                splitAndMove(admin, namespace, field, points, shards);
+                log.info("Pre-split " + namespace + " into " + (points.size() + 1) + " chunks across " + shards.size() + " shard(s)");
+            }
+        }
+
+        return new ImportDataConfig(importData.getDatabase(), importData.getCollection(), importData.getFile(),
+                false, importData.getUpsertOnImport(), importData.getTimeout(), importData.getFormat());
+    }
+
+    /**
+     * @param sharded the collection's entry in {@code config.collections}
+     * @return the command sharding the dropped collection again as it was
+     */
+    static Document reshardCommand(Document sharded, int shards) {
+        Document key = sharded.get("key", Document.class);
+        Document command = new Document("shardCollection", sharded.getString("_id")).append("key", key);
+        if (Boolean.TRUE.equals(sharded.getBoolean("unique"))) {
+            command.append("unique", true);
+        }
+        if (key.values().contains("hashed")) {
+            command.append("numInitialChunks", shards * ShardedCluster.INITIAL_CHUNKS_PER_SHARD);
+        }
+        return command;
+    }
+
+    /**
+     * @param sorted the sampled values, in order
+     * @return up to {@code chunks - 1} distinct values splitting the sample
+     *         into ranges of about the same size
+     */
+    static List<BsonValue> splitPoints(List<BsonValue> sorted, Comparator<BsonValue> order, int chunks) {
+        List<BsonValue> points = new ArrayList<BsonValue>();
+        for (int i = 1; i < chunks; i++) {
+            BsonValue point = sorted.get((int) ((long) i * sorted.size() / chunks));
+            // the first point must leave the lowest value in the first chunk
+            BsonValue previous = points.isEmpty() ? sorted.get(0) : points.get(points.size() - 1);
+            if (order.compare(point, previous) > 0) {
+                points.add(point);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @return an order for the sampled values if they all share a type the
+     *         order is known for, {@code null} otherwise
+     */
+    static Comparator<BsonValue> order(List<BsonValue> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+
+        BsonValue first = values.get(0);
+        Comparator<BsonValue> order;
+        if (first.isNumber()) {
+            order = Comparator.comparingDouble(value -> value.asNumber().doubleValue());
+        } else if (first.isString()) {
+            order = Comparator.comparing(value -> value.asString().getValue());
+        } else if (first.isObjectId()) {
+            order = Comparator.comparing(value -> value.asObjectId().getValue());
+        } else if (first.isDateTime()) {
+            order = Comparator.comparingLong(value -> value.asDateTime().getValue());
+        } else {
+            return null;
+        }
+
+        for (BsonValue value : values) {
+            if (value.getBsonType() != first.getBsonType() && !(first.isNumber() && value.isNumber())) {
+                return null;
+            }
+        }
+        return order;
+    }
+
+    private void splitAndMove(MongoDatabase admin, String namespace, String field, List<BsonValue> points, List<String> shards) {
+        for (BsonValue point : points) {
+            try {
+                admin.runCommand(new Document("split", namespace).append("middle", new BsonDocument(field, point)));
+            } catch (MongoCommandException e) {
+                log.debug("Unable to split " + namespace + " at " + point + ": " + e.getErrorMessage());
+            }
+        }
+
+        // chunk i starts at points[i - 1], the first chunk (from MinKey) stays on the primary shard
+        for (int i = 1; i <= points.size(); i++) {
+            String shard = shards.get(i % shards.size());
+            try {
+                admin.runCommand(new Document("moveChunk", namespace)
+                        .append("find", new BsonDocument(field, points.get(i - 1)))
+                        .append("to", shard));
+            } catch (MongoCommandException e) {
+                log.debug("Unable to move chunk of " + namespace + " at " + points.get(i - 1) + " to " + shard + ": " + e.getErrorMessage());
+            }
+        }
+    }
+
+    private static List<String> shardNames(MongoDatabase admin) {
+        List<String> names = new ArrayList<String>();
+        for (Object shard : (List<?>) admin.runCommand(new Document("listShards", 1)).get("shards")) {
+            names.add(((Document) shard).getString("_id"));
+        }
+        return names;
+    }
+
+    /**
+     * Reservoir samples up to {@link #SAMPLE_SIZE} values of the given field
+     * from the import file, reading it one document at a time.
+     */
+    private List<BsonValue> sample(File file, boolean jsonArray, final String field) throws IOException, MojoExecutionException {
+        final List<BsonValue> sample = new ArrayList<BsonValue>();
+        final long[] seen = {0};
+        Sampler sampler = document -> {
+            BsonValue value = value(document, field);
+            if (value == null) {
+                return;
+            }
+            seen[0]++;
+            if (sample.size() < SAMPLE_SIZE) {
+                sample.add(value);
+            } else {
+                long slot = (long) (random.nextDouble() * seen[0]);
+                if (slot < SAMPLE_SIZE) {
+                    sample.set((int) slot, value);
+                }
+            }
+        };
+
+        if (jsonArray) {
+            try (JsonDocumentReader reader = JsonDocumentReader.open(file)) {
+                BsonDocument document;
+                while ((document = reader.next()) != null) {
+                    sampler.add(document);
+                }
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                for (NdjsonSplitter.Chunk chunk : sampleChunks(channel)) {
+                    NdjsonSplitter.readLines(channel, chunk, line -> sampler.add(BsonDocument.parse(line)));
+                }
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * @return the ranges to read an NDJSON file in, on this thread, each
+     *         small enough to be mapped
+     */
+    static List<NdjsonSplitter.Chunk> sampleChunks(FileChannel channel) throws IOException {
+        return NdjsonSplitter.split(channel, NdjsonSplitter.chunkCount(channel.size(), 1));
+    }
+
+    /**
+     * @return the value at the given dotted path, or {@code null}
+     */
+    static BsonValue value(BsonDocument document, String path) {
+        BsonValue value = document;
+        for (String name : path.split("\\.")) {
+            if (!value.isDocument()) {
+                return null;
+            }
+            value = value.asDocument().get(name);
+            if (value == null) {
+                return null;
+            }
+        }
+        return value;
+    }
+
+    private interface Sampler {
+        void add(BsonDocument document);
+    }
+
+}
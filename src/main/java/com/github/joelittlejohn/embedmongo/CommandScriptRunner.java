@@ -0,0 +1,270 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.bson.BsonArray;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Runs a script made of database command documents, written in (extended)
+ * JSON one after another or as an array, e.g.
+ * <code>{"insert": "users", "documents": [{"name": "joe"}]}</code>.
+ * <p>
+ * {@code insert}, {@code update} and {@code delete} commands are not sent
+ * one by one: consecutive writes to the same collection are collected and
+ * sent as bulk writes of up to {@code batchSize} operations. A write command
+ * with options a bulk write cannot carry, such as {@code writeConcern} or a
+ * {@code collation} or {@code arrayFilters} on one of its operations, is sent
+ * on its own with runCommand instead, as is any other command, once the
+ * pending writes have been sent.
+ * A command may name its database in a {@code $db} field, otherwise it runs
+ * against the default database.
+ */
+class CommandScriptRunner {
+
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final Set<String> UPDATE_FIELDS = new HashSet<String>(Arrays.asList("q", "u", "upsert", "multi"));
+    private static final Set<String> DELETE_FIELDS = new HashSet<String>(Arrays.asList("q", "limit"));
+    private static final Set<String> WRITE_COMMANDS = new HashSet<String>(Arrays.asList("insert", "update", "delete"));
+
+    private final Function<String, MongoDatabase> databases;
+    private final String defaultDatabase;
+    private final int batchSize;
+    private final List<WriteModel<BsonDocument>> writes = new ArrayList<WriteModel<BsonDocument>>();
+
+    private String database;
+    private String collection;
+    private boolean ordered;
+    private int commands;
+    private int bulkWrites;
+
+    CommandScriptRunner(Function<String, MongoDatabase> databases, String defaultDatabase, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Script batch size must be at least 1 but was " + batchSize);
+        }
+        this.databases = databases;
+        this.defaultDatabase = defaultDatabase;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs every command of the script, sending the writes still pending at
+     * its end.
+     */
+    void run(JsonDocumentReader script) throws IOException {
+        BsonDocument command;
+        while ((command = script.next()) != null) {
+            execute(command);
+        }
+        flush();
+    }
+
+    void execute(BsonDocument command) {
+        commands++;
+        if (command.isEmpty()) {
+            throw new IllegalArgumentException("Command " + commands + " is an empty document");
+        }
+
+        BsonValue db = command.remove("$db");
+        String targetDatabase = db != null ? db.asString().getValue() : defaultDatabase;
+        String name = command.getFirstKey();
+
+        switch (name) {
+            case "insert":
+                if (!isBatchable(command, "documents", null)) {
+                    break;
+                }
+                for (BsonValue document : operations(command, "documents")) {
+                    write(targetDatabase, command, new InsertOneModel<BsonDocument>(document.asDocument()));
+                }
+                return;
+            case "update":
+                if (!isBatchable(command, "updates", UPDATE_FIELDS)) {
+                    break;
+                }
+                for (BsonValue update : operations(command, "updates")) {
+                    write(targetDatabase, command, update(update.asDocument()));
+                }
+                return;
+            case "delete":
+                if (!isBatchable(command, "deletes", DELETE_FIELDS)) {
+                    break;
+                }
+                for (BsonValue delete : operations(command, "deletes")) {
+                    write(targetDatabase, command, delete(delete.asDocument()));
+                }
+                return;
+        }
+
+        flush();
+        Document reply = databases.apply(targetDatabase).runCommand(command);
+        if (WRITE_COMMANDS.contains(name)) {
+            checkWriteReply(name, reply);
+        }
+    }
+
+    /**
+     * Sends the writes collected so far.
+     */
+    void flush() {
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        MongoCollection<BsonDocument> target = databases.apply(database).getCollection(collection, BsonDocument.class);
+        target.bulkWrite(new ArrayList<WriteModel<BsonDocument>>(writes), new BulkWriteOptions().ordered(ordered));
+        bulkWrites++;
+        writes.clear();
+    }
+
+    /**
+     * @return how many commands have been run
+     */
+    int getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return how many bulk writes the write commands were sent as
+     */
+    int getBulkWrites() {
+        return bulkWrites;
+    }
+
+    private void write(String targetDatabase, BsonDocument command, WriteModel<BsonDocument> write) {
+        String targetCollection = command.getString(command.getFirstKey()).getValue();
+        boolean targetOrdered = command.getBoolean("ordered", BsonBoolean.TRUE).getValue();
+
+        if (!writes.isEmpty() && (!targetDatabase.equals(database) || !targetCollection.equals(collection) || targetOrdered != ordered)) {
+            flush();
+        }
+
+        database = targetDatabase;
+        collection = targetCollection;
+        ordered = targetOrdered;
+        writes.add(write);
+
+        if (writes.size() == batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * @param operationFields the fields an operation may have, or
+     *            {@code null} if any are allowed
+     * @return whether the command and its operations have no options other
+     *         than {@code ordered} that a bulk write would drop
+     */
+    private boolean isBatchable(BsonDocument command, String field, Set<String> operationFields) {
+        for (String key : command.keySet()) {
+            if (!key.equals(command.getFirstKey()) && !key.equals(field) && !key.equals("ordered")) {
+                return false;
+            }
+        }
+        for (BsonValue operation : operations(command, field)) {
+            if (!operation.isDocument()) {
+                return false;
+            }
+            // an aggregation pipeline update has no bulk write model in this driver
+            BsonDocument fields = operation.asDocument();
+            if (operationFields != null && (!operationFields.containsAll(fields.keySet()) || fields.isArray("u"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fails a write command the server answered with {@code ok: 1} but with
+     * write errors or a write concern error, as a bulk write would have.
+     */
+    @SuppressWarnings("unchecked")
+    private void checkWriteReply(String name, Document reply) {
+        List<Document> writeErrors = reply.get("writeErrors", List.class);
+        if (writeErrors != null && !writeErrors.isEmpty()) {
+            Document first = writeErrors.get(0);
+            throw new MongoException(first.getInteger("code", -1), "Command " + commands + " (" + name + ") had " + writeErrors.size()
+                    + " write error(s), the first at index " + first.get("index") + ": " + first.getString("errmsg"));
+        }
+        Document writeConcernError = reply.get("writeConcernError", Document.class);
+        if (writeConcernError != null) {
+            throw new MongoException(writeConcernError.getInteger("code", -1), "Command " + commands + " (" + name + ") failed to satisfy its write concern: "
+                    + writeConcernError.getString("errmsg"));
+        }
+    }
+
+    private BsonArray operations(BsonDocument command, String field) {
+        if (!command.isArray(field)) {
+            throw new IllegalArgumentException("Command " + commands + " (" + command.getFirstKey() + ") has no '" + field + "' array");
+        }
+        return command.getArray(field);
+    }
+
+    private WriteModel<BsonDocument> update(BsonDocument update) {
+        BsonDocument filter = update.getDocument("q");
+        BsonDocument change = update.getDocument("u");
+        boolean upsert = update.getBoolean("upsert", BsonBoolean.FALSE).getValue();
+        boolean multi = update.getBoolean("multi", BsonBoolean.FALSE).getValue();
+
+        if (change.isEmpty() || !change.getFirstKey().startsWith("$")) {
+            if (multi) {
+                // the server rejects this too, rather than replacing a single document
+                throw new IllegalArgumentException("Command " + commands + " (update) has a replacement document with multi: true, use update operators to update many documents");
+            }
+            return new ReplaceOneModel<BsonDocument>(filter, change, new ReplaceOptions().upsert(upsert));
+        }
+        if (multi) {
+            return new UpdateManyModel<BsonDocument>(filter, change, new UpdateOptions().upsert(upsert));
+        }
+        return new UpdateOneModel<BsonDocument>(filter, change, new UpdateOptions().upsert(upsert));
+    }
+
+    private static WriteModel<BsonDocument> delete(BsonDocument delete) {
+        BsonDocument filter = delete.getDocument("q");
+        if (delete.getNumber("limit", new BsonInt32(0)).intValue() == 1) {
+            return new DeleteOneModel<BsonDocument>(filter);
+        }
+        return new DeleteManyModel<BsonDocument>(filter);
+    }
+
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The CPU and memory limits of the cgroup (v1 or v2) the build runs in, and
+ * the mongod and import settings derived from them.
+ */
+final class ContainerLimits {
+
+    static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+
+    static final long UNLIMITED = -1;
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    /** cgroup v1 reports "no limit" as a huge, page aligned number. */
+    private static final long V1_UNLIMITED_THRESHOLD = 1L << 60;
+
+    /** The smallest cache mongod accepts. */
+    private static final BigDecimal MIN_CACHE_SIZE_GB = new BigDecimal("0.25");
+
+    private final long memoryLimit;
+    private final double cpuLimit;
+    private final int availableProcessors;
+
+    ContainerLimits(long memoryLimit, double cpuLimit, int availableProcessors) {
+        this.memoryLimit = memoryLimit;
+        this.cpuLimit = cpuLimit;
+        this.availableProcessors = availableProcessors;
+    }
+
+    static ContainerLimits detect() {
+        return read(CGROUP_ROOT, Runtime.getRuntime().availableProcessors());
+    }
+
+    static ContainerLimits read(Path root, int availableProcessors) {
+        if (Files.exists(root.resolve("cgroup.controllers"))) {
+            return new ContainerLimits(readV2Memory(root), readV2Cpu(root), availableProcessors);
+        }
+        return new ContainerLimits(readV1Memory(root), readV1Cpu(root), availableProcessors);
+    }
+
+    /**
+     * @return the memory limit in bytes, or {@link #UNLIMITED}
+     */
+    long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * @return the number of CPUs the cgroup may use, or {@link #UNLIMITED}
+     */
+    double getCpuLimit() {
+        return cpuLimit;
+    }
+
+    /**
+     * @return the number of processors worth running work on, at least one
+     */
+    int processors() {
+        if (cpuLimit == UNLIMITED) {
+            return availableProcessors;
+        }
+        return Math.max(1, Math.min(availableProcessors, (int) Math.ceil(cpuLimit)));
+    }
+
+    /**
+     * Sizes the WiredTiger cache to a quarter of the memory limit, shared
+     * between the given number of mongod instances, leaving the rest to the
+     * mongod processes themselves and to the JVM under test. Versions before
+     * 3.4 only accept whole gigabytes, so their cache is rounded down, and left
+     * at mongod's default if that would leave less than a gigabyte.
+     *
+     * @return the cache size in GB, or {@code null} when there is no memory
+     *         limit, or no size within it, and mongod's own default is used
+     */
+    String wiredTigerCacheSizeGB(String version, int instances, Log log) {
+        if (memoryLimit == UNLIMITED) {
+            return null;
+        }
+
+        BigDecimal size = BigDecimal.valueOf(memoryLimit)
+                .divide(BigDecimal.valueOf(4L * GB * Math.max(1, instances)), 2, RoundingMode.DOWN)
+                .max(MIN_CACHE_SIZE_GB);
+
+        if (!acceptsFractionalCacheSize(version)) {
+            BigDecimal wholeSize = size.setScale(0, RoundingMode.DOWN);
+            if (wholeSize.signum() == 0) {
+                log.info("MongoDB " + version + " only accepts whole GB for wiredTigerCacheSizeGB and 1 GB would exceed the "
+                        + size.toPlainString() + " GB available per instance, leaving mongod's default cache size");
+                return null;
+            }
+            size = wholeSize;
+        }
+        return size.stripTrailingZeros().toPlainString();
+    }
+
+    @Override
+    public String toString() {
+        return (cpuLimit == UNLIMITED ? "no CPU limit" : cpuLimit + " CPU(s)") + ", "
+                + (memoryLimit == UNLIMITED ? "no memory limit" : (memoryLimit / (1024 * 1024)) + " MB memory");
+    }
+
+    private static boolean acceptsFractionalCacheSize(String version) {
+        Matcher matcher = EphemeralStorage.MAJOR_MINOR.matcher(version);
+        if (!matcher.find()) {
+            return true;
+        }
+
+        int major = Integer.parseInt(matcher.group(1));
+        int minor = Integer.parseInt(matcher.group(2));
+        return major > 3 || (major == 3 && minor >= 4);
+    }
+
+    private static long readV2Memory(Path root) {
+        String value = read(root.resolve("memory.max"));
+        return value == null || value.equals("max") ? UNLIMITED : parseLimit(value);
+    }
+
+    private static double readV2Cpu(Path root) {
+        String value = read(root.resolve("cpu.max"));
+        if (value == null) {
+            return UNLIMITED;
+        }
+
+        String[] quotaAndPeriod = value.split("\\s+");
+        if (quotaAndPeriod[0].equals("max") || quotaAndPeriod.length < 2) {
+            return UNLIMITED;
+        }
+        return cpus(quotaAndPeriod[0], quotaAndPeriod[1]);
+    }
+
+    private static long readV1Memory(Path root) {
+        String value = read(root.resolve("memory").resolve("memory.limit_in_bytes"));
+        if (value == null) {
+            return UNLIMITED;
+        }
+
+        long limit = parseLimit(value);
+        return limit >= V1_UNLIMITED_THRESHOLD ? UNLIMITED : limit;
+    }
+
+    private static double readV1Cpu(Path root) {
+        String quota = read(root.resolve("cpu").resolve("cpu.cfs_quota_us"));
+        String period = read(root.resolve("cpu").resolve("cpu.cfs_period_us"));
+        if (quota == null || period == null) {
+            return UNLIMITED;
+        }
+        return cpus(quota, period);
+    }
+
+    private static double cpus(String quota, String period) {
+        long quotaValue = parseLimit(quota);
+        long periodValue = parseLimit(period);
+        if (quotaValue <= 0 || periodValue <= 0) {
+            return UNLIMITED;
+        }
+        return (double) quotaValue / periodValue;
+    }
+
+    /**
+     * @return the number in a cgroup limit file, or {@link #UNLIMITED} if the
+     *         file holds anything else
+     */
+    private static long parseLimit(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return UNLIMITED;
+        }
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.exists(file) ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.project.MavenProject;
+import org.bson.Document;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
+
+/**
+ * A cache of seeded MongoDB data directories, keyed by a fingerprint of
+ * everything that goes into seeding them: the MongoDB version, the storage
+ * engine and the configuration and content of every mongo-import and
+ * mongo-scripts execution in the project.
+ * <p>
+ * When a snapshot with a matching fingerprint exists, it is copied into the
+ * data directory before mongod starts and the seeding goals are skipped.
+ * Otherwise a snapshot is taken once the last seeding execution of the build
+ * has completed, while writes are held with fsyncLock.
+ */
+class DataDirectoryCache {
+
+    private static final List<String> UNCACHED_FILES = Arrays.asList("mongod.lock", "diagnostic.data");
+
+    private final File cacheDirectory;
+    private final String fingerprint;
+    private final File dataDirectory;
+    private final AtomicInteger pendingSeeds = new AtomicInteger();
+    private volatile boolean restored;
+
+    DataDirectoryCache(File cacheDirectory, String fingerprint, File dataDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        this.fingerprint = fingerprint;
+        this.dataDirectory = dataDirectory;
+    }
+
+    /**
+     * Computes the fingerprint for the seed data of the given project.
+     */
+    static String fingerprint(MavenProject project, String version, String storageEngine) throws IOException {
+        MessageDigest digest = FileUtils.sha256();
+        update(digest, version);
+        update(digest, storageEngine);
+
+        for (Xpp3Dom configuration : PluginExecutions.configurations(project, "mongo-import")) {
+            update(digest, configuration.toString());
+            Xpp3Dom imports = configuration.getChild("imports");
+            if (imports != null) {
+                for (Xpp3Dom importData : imports.getChildren()) {
+                    String file = PluginExecutions.value(importData, "file");
+                    if (file != null) {
+                        update(digest, PluginExecutions.file(project, file));
+                    }
+                }
+            }
+        }
+
+        for (Xpp3Dom configuration : PluginExecutions.configurations(project, "mongo-scripts")) {
+            update(digest, configuration.toString());
+            String scriptsDirectory = PluginExecutions.value(configuration, "scriptsDirectory");
+            if (scriptsDirectory != null) {
+                update(digest, PluginExecutions.file(project, scriptsDirectory));
+            }
+        }
+
+        return FileUtils.hex(digest.digest());
+    }
+
+    String getFingerprint() {
+        return fingerprint;
+    }
+
+    File getDataDirectory() {
+        return dataDirectory;
+    }
+
+    boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * Replaces the content of the data directory with the cached snapshot,
+     * if there is one.
+     *
+     * @return {@code true} if a snapshot was restored
+     */
+    boolean restore() throws IOException {
+        Path snapshot = snapshotPath();
+        if (!Files.isDirectory(snapshot)) {
+            return false;
+        }
+
+        if (dataDirectory.exists()) {
+            FileUtils.delete(dataDirectory.toPath());
+        }
+        copy(snapshot, dataDirectory.toPath());
+
+        restored = true;
+        return true;
+    }
+
+    /**
+     * Records how many seeding executions must complete before a snapshot
+     * is taken.
+     */
+    void expectSeeds(int count) {
+        pendingSeeds.set(count);
+    }
+
+    /**
+     * @return {@code true} if this was the last outstanding seeding execution
+     *         and the data directory should now be snapshotted
+     */
+    boolean seedCompleted() {
+        return !restored && pendingSeeds.decrementAndGet() == 0;
+    }
+
+    /**
+     * Snapshots the data directory of a running mongod, holding writes with
+     * fsyncLock while the files are copied.
+     */
+    void snapshot(MongoClient client) throws IOException {
+        client.getDatabase("admin").runCommand(new Document("fsync", 1).append("lock", true));
+        try {
+            store();
+        } finally {
+            unlock(client);
+        }
+    }
+
+    /**
+     * Copies the data directory into the cache. The copy is made under a
+     * temporary name and moved into place, so that concurrent builds never
+     * see a partial snapshot.
+     */
+    void store() throws IOException {
+        Path snapshot = snapshotPath();
+        if (Files.isDirectory(snapshot)) {
+            return;
+        }
+
+        Files.createDirectories(cacheDirectory.toPath());
+        Path partial = Files.createTempDirectory(cacheDirectory.toPath(), fingerprint + ".partial");
+        try {
+            copy(dataDirectory.toPath(), partial);
+            Files.move(partial, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (!Files.isDirectory(snapshot)) {
+                throw e;
+            }
+        } finally {
+            if (Files.exists(partial)) {
+                FileUtils.delete(partial);
+            }
+        }
+    }
+
+    private Path snapshotPath() {
+        return new File(cacheDirectory, fingerprint).toPath();
+    }
+
+    private static void unlock(MongoClient client) {
+        try {
+            client.getDatabase("admin").runCommand(new Document("fsyncUnlock", 1));
+        } catch (MongoCommandException e) {
+            // servers before 3.2 only unlock through a query on this pseudo-collection
+            client.getDatabase("admin").getCollection("$cmd.sys.unlock").find().first();
+        }
+    }
+
+    private static void copy(final Path source, final Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(source) && UNCACHED_FILES.contains(dir.getFileName().toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!UNCACHED_FILES.contains(file.getFileName().toString())) {
+                    Files.copy(file, target.resolve(source.relativize(file)), StandardCopyOption.REPLACE_EXISTING);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static void update(MessageDigest digest, File file) throws IOException {
+        update(digest, file.getName());
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            List<File> sorted = children == null ? Collections.<File>emptyList() : new ArrayList<File>(Arrays.asList(children));
+            Collections.sort(sorted);
+            for (File child : sorted) {
+                update(digest, child);
+            }
+        } else if (file.isFile()) {
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.bson.BsonDocument;
+import org.bson.json.JsonParseException;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Imports files in-process through the mongo-java-driver, as an alternative
+ * to spawning one mongoimport process per file. Files are streamed one
+ * document at a time and written in fixed-size batches, using insertMany for
+ * plain imports and an unordered bulkWrite of _id keyed upserts when
+ * {@code upsertOnImport} is set, so heap use does not grow with the size of
+ * the file. Large line-delimited files are additionally split into byte
+ * ranges that are imported by several workers at once.
+ */
+class DriverImporter {
+
+    private final MongoClient client;
+    private final int batchSize;
+    private final int workers;
+    private final Log log;
+
+    DriverImporter(MongoClient client, int batchSize, int workers, Log log) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Import batch size must be at least 1 but was " + batchSize);
+        }
+        this.client = client;
+        this.batchSize = batchSize;
+        this.workers = Math.max(1, workers);
+        this.log = log;
+    }
+
+    /**
+     * Loads a single import file into the given database, honouring the
+     * drop, upsert and timeout settings of the import.
+     *
+     * @return the number of documents written
+     */
+    long importFile(String database, ImportDataConfig importData) throws MojoExecutionException, InterruptedException {
+        long deadline = System.currentTimeMillis() + importData.getTimeout();
+        File file = new File(importData.getFile());
+
+        MongoCollection<BsonDocument> collection = client.getDatabase(database)
+                .getCollection(importData.getCollection(), BsonDocument.class);
+
+        try {
+            if (importData.getDropOnImport()) {
+                collection.drop();
+            }
+
+            long count;
+            if (importData.isJsonArray()) {
+                count = importDocuments(file, new Batch(collection, importData, deadline));
+            } else {
+                count = importLines(file, collection, importData, deadline);
+            }
+
+            log.info("Imported " + count + " document(s) from '" + importData.getFile() + "' into " + database + "." + importData.getCollection());
+            return count;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot read import file '" + importData.getFile() + "'", e);
+        } catch (JsonParseException e) {
+            throw new MojoExecutionException("Cannot parse import file '" + importData.getFile() + "': " + e.getMessage(), e);
+        } catch (MongoException e) {
+            throw new MojoExecutionException("Cannot import '" + importData.getFile() + "': " + e.getMessage(), e);
+        }
+    }
+
+    private long importDocuments(File file, Batch batch) throws IOException, MojoExecutionException {
+        try (JsonDocumentReader reader = JsonDocumentReader.open(file)) {
+            BsonDocument document;
+            while ((document = reader.next()) != null) {
+                batch.add(document);
+            }
+            return batch.flush();
+        }
+    }
+
+    private long importLines(File file, MongoCollection<BsonDocument> collection, ImportDataConfig importData, long deadline)
+            throws IOException, MojoExecutionException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<NdjsonSplitter.Chunk> chunks = NdjsonSplitter.split(channel, NdjsonSplitter.chunkCount(channel.size(), workers));
+
+            if (chunks.size() <= 1) {
+                long count = 0;
+                for (NdjsonSplitter.Chunk chunk : chunks) {
+                    count += importChunk(channel, chunk, new Batch(collection, importData, deadline));
+                }
+                return count;
+            }
+
+            log.debug("Importing '" + importData.getFile() + "' as " + chunks.size() + " ranges " + chunks);
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, chunks.size()), new DaemonThreadFactory("embedmongo-import-range"));
+            List<Future<Long>> pending = new ArrayList<Future<Long>>();
+            try {
+                for (NdjsonSplitter.Chunk chunk : chunks) {
+                    pending.add(executor.submit(() -> importChunk(channel, chunk, new Batch(collection, importData, deadline))));
+                }
+
+                long count = 0;
+                for (Future<Long> future : pending) {
+                    count += future.get();
+                }
+                return count;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof MojoExecutionException) {
+                    throw (MojoExecutionException) cause;
+                } else if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new MojoExecutionException(cause.getMessage(), cause);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private long importChunk(FileChannel channel, NdjsonSplitter.Chunk chunk, Batch batch) throws IOException, MojoExecutionException {
+        NdjsonSplitter.readLines(channel, chunk, line -> batch.add(BsonDocument.parse(line)));
+        return batch.flush();
+    }
+
+    /**
+     * Collects documents for one worker and writes them whenever the batch
+     * is full.
+     */
+    private class Batch {
+        private final MongoCollection<BsonDocument> collection;
+        private final ImportDataConfig importData;
+        private final long deadline;
+        private final List<BsonDocument> documents = new ArrayList<BsonDocument>(batchSize);
+        private long count;
+
+        Batch(MongoCollection<BsonDocument> collection, ImportDataConfig importData, long deadline) {
+            this.collection = collection;
+            this.importData = importData;
+            this.deadline = deadline;
+        }
+
+        void add(BsonDocument document) throws MojoExecutionException {
+            documents.add(document);
+            if (documents.size() == batchSize) {
+                write();
+                if (System.currentTimeMillis() > deadline) {
+                    throw new MojoExecutionException("Import of '" + importData.getFile() + "' did not complete within " + importData.getTimeout() + "ms");
+                }
+            }
+        }
+
+        long flush() {
+            write();
+            return count;
+        }
+
+        private void write() {
+            if (documents.isEmpty()) {
+                return;
+            }
+
+            if (importData.getUpsertOnImport()) {
+                List<WriteModel<BsonDocument>> writes = new ArrayList<WriteModel<BsonDocument>>(documents.size());
+                for (BsonDocument document : documents) {
+                    if (document.containsKey("_id")) {
+                        writes.add(new ReplaceOneModel<BsonDocument>(Filters.eq("_id", document.get("_id")), document, new ReplaceOptions().upsert(true)));
+                    } else {
+                        writes.add(new InsertOneModel<BsonDocument>(document));
+                    }
+                }
+                collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+            } else {
+                collection.insertMany(documents, new InsertManyOptions().ordered(false));
+            }
+
+            count += documents.size();
+            documents.clear();
+        }
+    }
+
+}
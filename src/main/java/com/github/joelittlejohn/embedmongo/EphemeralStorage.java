@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Choices for running mongod without durability, for tests that throw their
+ * data away: a RAM-backed dbpath and the fastest storage engine the version
+ * supports.
+ */
+final class EphemeralStorage {
+
+    static final String EPHEMERAL_FOR_TEST = "ephemeralForTest";
+
+    static final List<File> TMPFS_DIRECTORIES = Arrays.asList(new File("/dev/shm"), new File("/run/shm"));
+
+    static final Pattern MAJOR_MINOR = Pattern.compile("^[vV]?(\\d+)[._](\\d+)");
+
+    private EphemeralStorage() {
+    }
+
+    /**
+     * @return the first of the given directories that exists and is
+     *         writable, or {@code null} if none is
+     */
+    static File tmpfsDirectory(List<File> candidates) {
+        for (File candidate : candidates) {
+            if (candidate.isDirectory() && candidate.canWrite()) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Picks the storage engine for an ephemeral mongod. The community builds
+     * this plugin downloads ship {@code ephemeralForTest} from 3.2 until it
+     * was removed in 7.0 ({@code inMemory} is only in MongoDB Enterprise), so
+     * other versions keep the configured engine.
+     *
+     * @param version the version as it appears in the download path, e.g.
+     *            {@code 3.6.5}
+     * @param fallback the storage engine to use when the version has no
+     *            ephemeral engine
+     */
+    static String storageEngine(String version, String fallback) {
+        Matcher matcher = MAJOR_MINOR.matcher(version);
+        if (!matcher.find()) {
+            return fallback;
+        }
+
+        int major = Integer.parseInt(matcher.group(1));
+        int minor = Integer.parseInt(matcher.group(2));
+        boolean supported = (major > 3 || (major == 3 && minor >= 2)) && major < 7;
+        return supported ? EPHEMERAL_FOR_TEST : fallback;
+    }
+
+}
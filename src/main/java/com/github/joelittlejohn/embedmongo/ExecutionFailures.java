@@ -0,0 +1,51 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.util.concurrent.ExecutionException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Turns the failure of a task run on another thread back into the exception
+ * a goal reports.
+ */
+final class ExecutionFailures {
+
+    private ExecutionFailures() {
+    }
+
+    /**
+     * @return the {@link MojoExecutionException} the task failed with, or
+     *         one with the given message wrapping whatever else it threw
+     */
+    static MojoExecutionException unwrap(ExecutionException e, String message) {
+        Throwable cause = e.getCause();
+        if (cause instanceof MojoExecutionException) {
+            return (MojoExecutionException) cause;
+        }
+        return new MojoExecutionException(message, cause);
+    }
+
+    /**
+     * @return the {@link MojoExecutionException} the task failed with, or
+     *         one wrapping whatever else it threw, with its message
+     */
+    static MojoExecutionException unwrap(ExecutionException e) {
+        return unwrap(e, e.getCause().getMessage());
+    }
+
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.config.RuntimeConfigBuilder;
+import de.flapdoodle.embed.mongo.distribution.IFeatureAwareVersion;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.extract.IExtractedFileSet;
+import de.flapdoodle.embed.process.store.IArtifactStore;
+
+/**
+ * When invoked, this goal downloads and extracts every MongoDB version
+ * configured for the <code>start</code>, <code>start-async</code> and
+ * <code>mongo-import</code> goals of the project, so that later builds need
+ * no network access, e.g. to pre-warm a build image. Versions are fetched
+ * concurrently. Takes the same download configuration as the
+ * <code>start</code> goal.
+ */
+@Mojo(name="go-offline")
+public class GoOfflineMojo extends StartMojo {
+
+    @Override
+    public void executeStart() throws MojoExecutionException, MojoFailureException {
+        Map<String, Prefetch> prefetches = collectVersions();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(prefetches.size(), Runtime.getRuntime().availableProcessors()), new DaemonThreadFactory("embedmongo-prefetch"));
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final Prefetch prefetch : prefetches.values()) {
+                futures.add(executor.submit(() -> {
+                    prefetch(prefetch);
+                    return null;
+                }));
+            }
+
+            List<String> failures = new ArrayList<String>();
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    getLog().error(e.getCause().getMessage(), e.getCause());
+                    failures.add(e.getCause().getMessage());
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                throw new MojoExecutionException("Unable to prefetch " + failures.size() + " MongoDB version(s): " + failures);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while prefetching MongoDB", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Collects the distinct version and features combinations configured
+     * across the project's executions, with the commands each one needs. If
+     * there are none, the version configured for this goal is used.
+     */
+    Map<String, Prefetch> collectVersions() {
+        Map<String, Prefetch> prefetches = new LinkedHashMap<String, Prefetch>();
+
+        for (String goal : new String[] {"start", "start-async"}) {
+            for (Xpp3Dom configuration : PluginExecutions.configurations(project, goal)) {
+                add(prefetches, configuration, Command.MongoD);
+                String shards = PluginExecutions.value(configuration, "shards");
+                if (shards != null && !"0".equals(shards.trim())) {
+                    add(prefetches, configuration, Command.MongoS);
+                }
+            }
+        }
+        for (Xpp3Dom configuration : PluginExecutions.configurations(project, "mongo-import")) {
+            String engine = PluginExecutions.value(configuration, "importEngine");
+            if (engine == null || !MongoImportMojo.ImportEngine.DRIVER.name().equalsIgnoreCase(engine)) {
+                add(prefetches, configuration, Command.MongoImport);
+            }
+        }
+
+        if (prefetches.isEmpty()) {
+            IFeatureAwareVersion version = getVersion();
+            prefetches.put(version.asInDownloadPath() + "|" + getFeatures(), new Prefetch(version, Command.MongoD));
+        }
+        return prefetches;
+    }
+
+    private void add(Map<String, Prefetch> prefetches, Xpp3Dom configuration, Command command) {
+        String version = PluginExecutions.value(configuration, "version");
+        String features = PluginExecutions.value(configuration, "features");
+        if (version == null) {
+            version = getVersion().asInDownloadPath();
+        }
+        if (features == null) {
+            features = getFeatures();
+        }
+
+        String key = version + "|" + features;
+        Prefetch prefetch = prefetches.get(key);
+        if (prefetch == null) {
+            prefetches.put(key, new Prefetch(getVersion(version, features), command));
+        } else {
+            prefetch.commands.add(command);
+        }
+    }
+
+    /**
+     * Downloads a version once, then extracts the executable of each command
+     * that needs it into the artifact store.
+     */
+    private void prefetch(Prefetch prefetch) throws IOException {
+        Distribution distribution = Distribution.detectFor(prefetch.version);
+
+        for (Command command : prefetch.commands) {
+            IArtifactStore artifactStore = command == Command.MongoD || command == Command.MongoS
+                    ? getArtifactStore(command)
+                    : new RuntimeConfigBuilder().defaults(command).build().getArtifactStore();
+
+            if (!artifactStore.checkDistribution(distribution)) {
+                throw new IOException("Unable to download " + distribution);
+            }
+            IExtractedFileSet files = artifactStore.extractFileSet(distribution);
+            artifactStore.removeFileSet(distribution, files);
+            getLog().info("Prefetched " + command.commandName() + " " + distribution);
+        }
+    }
+
+    static final class Prefetch {
+
+        final IFeatureAwareVersion version;
+        final Set<Command> commands;
+
+        Prefetch(IFeatureAwareVersion version, Command command) {
+            this.version = version;
+            this.commands = EnumSet.of(command);
+        }
+    }
+
+}
@@ -19,12 +19,17 @@ import static org.apache.commons.lang3.StringUtils.*;
 import java.io.File;
 
 public class ImportDataConfig {
+
+    public static final String FORMAT_JSON_ARRAY = "jsonArray";
+    public static final String FORMAT_NDJSON = "ndjson";
+
     private String database;
     private String collection;
     private String file;
     private Boolean dropOnImport = true;
     private Boolean upsertOnImport = true;
     private long timeout = 200000;
+    private String format = FORMAT_JSON_ARRAY;
 
     public ImportDataConfig() {
     }
@@ -38,6 +43,11 @@ public class ImportDataConfig {
         this.timeout = timeout;
     }
 
+    public ImportDataConfig(String database, String collection, String file, Boolean dropOnImport, Boolean upsertOnImport, long timeout, String format) {
+        this(database, collection, file, dropOnImport, upsertOnImport, timeout);
+        this.format = format;
+    }
+
     public String getDatabase() {
 
         return database;
@@ -67,6 +77,14 @@ public class ImportDataConfig {
         return timeout;
     }
 
+    public String getFormat() {
+        return format;
+    }
+
+    public boolean isJsonArray() {
+        return !FORMAT_NDJSON.equalsIgnoreCase(format);
+    }
+
     @Override
     public String toString() {
         return "ImportDataConfig{" +
@@ -76,6 +94,7 @@ public class ImportDataConfig {
                 ", dropOnImport=" + dropOnImport +
                 ", upsertOnImport=" + upsertOnImport +
                 ", timeout=" + timeout +
+                ", format='" + format + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Runs imports on a fixed number of worker threads. Imports are queued
+ * largest file first so that the longest running ones are not left until
+ * last, and the first failure cancels every import still queued or running.
+ */
+class ImportScheduler {
+
+    /**
+     * A single import, run on one of the scheduler's worker threads. Tasks
+     * should stop promptly when interrupted.
+     */
+    interface ImportTask {
+        void run(ImportDataConfig importData) throws Exception;
+    }
+
+    private final int concurrency;
+
+    ImportScheduler(int concurrency) {
+        this.concurrency = concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return how many workers each of the given number of imports may use
+     *         for itself while they run side by side, so that together they
+     *         use no more than {@link #getConcurrency()} workers
+     */
+    int workersPerImport(int imports) {
+        return Math.max(1, concurrency / Math.max(1, Math.min(concurrency, imports)));
+    }
+
+    void runAll(List<ImportDataConfig> imports, ImportTask task) throws MojoExecutionException, InterruptedException {
+        if (imports.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, imports.size()), new DaemonThreadFactory("embedmongo-import"));
+        CompletionService<ImportDataConfig> completionService = new ExecutorCompletionService<ImportDataConfig>(executor);
+        List<Future<ImportDataConfig>> pending = new ArrayList<Future<ImportDataConfig>>();
+
+        try {
+            for (final ImportDataConfig importData : largestFirst(imports)) {
+                pending.add(completionService.submit(() -> {
+                    task.run(importData);
+                    return importData;
+                }));
+            }
+
+            for (int i = 0; i < pending.size(); i++) {
+                Future<ImportDataConfig> completed = completionService.take();
+                try {
+                    completed.get();
+                } catch (ExecutionException e) {
+                    throw ExecutionFailures.unwrap(e);
+                }
+            }
+        } finally {
+            // drain the queue before cancelling, so freed workers can't pick up more imports
+            executor.shutdownNow();
+            for (Future<ImportDataConfig> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    static List<ImportDataConfig> largestFirst(List<ImportDataConfig> imports) {
+        List<ImportDataConfig> ordered = new ArrayList<ImportDataConfig>(imports);
+        ordered.sort(Comparator.comparingLong((ImportDataConfig importData) -> new File(importData.getFile()).length()).reversed());
+        return ordered;
+    }
+
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import org.bson.BsonDocument;
+import org.bson.json.JsonParseException;
+
+/**
+ * Reads import documents one at a time from a stream of JSON text, so that
+ * memory use is bounded by the largest single document rather than by the
+ * size of the file. Accepts either a top-level JSON array of documents (what
+ * mongoimport expects with --jsonArray) or documents simply following one
+ * another, such as line-delimited JSON. Lines starting with <code>//</code>
+ * between documents are skipped as comments.
+ * <p>
+ * The reader only tracks object nesting, string literals and
+ * <code>/regex/</code> literals to find where each document ends; the text of
+ * each document is then handed to the driver's extended JSON parser. As in
+ * that parser, a <code>/</code> inside a regex literal must be escaped, even
+ * within a character class.
+ */
+class JsonDocumentReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private final StringBuilder document = new StringBuilder();
+
+    private boolean started;
+    private boolean array;
+    private boolean finished;
+    private boolean read;
+    private int pushedBack = -1;
+
+    JsonDocumentReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Opens a UTF-8 encoded file through a buffered NIO channel.
+     */
+    static JsonDocumentReader open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        Reader reader = Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE);
+        return new JsonDocumentReader(new BufferedReader(reader, BUFFER_SIZE));
+    }
+
+    /**
+     * @return the next document, or {@code null} once the input is exhausted
+     */
+    BsonDocument next() throws IOException {
+        if (finished) {
+            return null;
+        }
+
+        if (!started) {
+            started = true;
+            int c = skipWhitespace();
+            if (c == '\uFEFF') {
+                c = skipWhitespace();
+            }
+            if (c == '[') {
+                array = true;
+            } else {
+                pushedBack = c;
+            }
+        }
+
+        int c = skipWhitespace();
+        boolean separated = false;
+        if (array && read && c == ',') {
+            separated = true;
+            c = skipWhitespace();
+        }
+
+        if (c == -1) {
+            if (array) {
+                throw new JsonParseException("Unexpected end of input, JSON array is not closed");
+            }
+            finished = true;
+            return null;
+        }
+        if (array && c == ']' && !separated) {
+            finished = true;
+            return null;
+        }
+        if (array && read && !separated) {
+            throw new JsonParseException("Expected ',' or ']' after a document in a JSON array but found '" + (char) c + "'");
+        }
+        if (c != '{') {
+            throw new JsonParseException("Expected a JSON document but found '" + (char) c + "'");
+        }
+
+        readDocument();
+        read = true;
+        return BsonDocument.parse(document.toString());
+    }
+
+    private void readDocument() throws IOException {
+        document.setLength(0);
+        document.append('{');
+
+        int depth = 1;
+        boolean inString = false;
+        boolean escaped = false;
+        char quote = 0;
+
+        while (depth > 0) {
+            int c = reader.read();
+            if (c == -1) {
+                throw new JsonParseException("Unexpected end of input inside a JSON document");
+            }
+            document.append((char) c);
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == quote) {
+                    inString = false;
+                }
+            } else if (c == '"' || c == '\'' || c == '/') {
+                // a regex literal ends at the next unescaped slash, like a string
+                inString = true;
+                quote = (char) c;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+            }
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        if (pushedBack != -1) {
+            c = pushedBack;
+            pushedBack = -1;
+        } else {
+            c = reader.read();
+        }
+
+        while (c != -1 && (Character.isWhitespace(c) || c == '/')) {
+            if (c == '/') {
+                // a // comment line between documents, e.g. a script directive
+                c = reader.read();
+                if (c != '/') {
+                    throw new JsonParseException("Expected a JSON document but found '/'");
+                }
+                while (c != -1 && c != '\n') {
+                    c = reader.read();
+                }
+            }
+            c = reader.read();
+        }
+        return c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCompressor;
+import com.mongodb.ServerAddress;
+
+/**
+ * Hands out one pooled {@link MongoClient} per server address, shared by all
+ * the goals of a build through the plugin context, instead of each goal
+ * opening and leaking connections of its own. Clients are borrowed: only
+ * the registry closes them, which the stop goal does once it is done with
+ * mongod.
+ */
+class MongoClientRegistry implements Closeable {
+
+    static final int DEFAULT_POOL_SIZE = 100;
+    static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    private final MongoClientOptions options;
+    private final Map<ServerAddress, MongoClient> clients = new LinkedHashMap<ServerAddress, MongoClient>();
+    private boolean closed;
+
+    MongoClientRegistry(MongoClientOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * @param poolSize the maximum number of connections per server
+     * @param connectTimeout how long to wait for a connection to open, in
+     *            milliseconds
+     * @param compressors a comma-separated list of {@code snappy} and
+     *            {@code zlib}, in order of preference, or {@code null} not
+     *            to compress messages
+     */
+    static MongoClientOptions options(int poolSize, int connectTimeout, String compressors) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Client pool size must be at least 1 but was " + poolSize);
+        }
+
+        List<MongoCompressor> compressorList = new ArrayList<MongoCompressor>();
+        if (compressors != null) {
+            for (String compressor : compressors.split(",")) {
+                switch (compressor.trim().toLowerCase()) {
+                    case "":
+                        break;
+                    case "snappy":
+                        compressorList.add(MongoCompressor.createSnappyCompressor());
+                        break;
+                    case "zlib":
+                        compressorList.add(MongoCompressor.createZlibCompressor());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown compressor '" + compressor.trim() + "', expected snappy or zlib");
+                }
+            }
+        }
+
+        return MongoClientOptions.builder()
+                .connectionsPerHost(poolSize)
+                .connectTimeout(connectTimeout)
+                .compressorList(compressorList)
+                .build();
+    }
+
+    /**
+     * @return the client for the given server, which the caller must not
+     *         close
+     */
+    synchronized MongoClient get(String host, int port) {
+        if (closed) {
+            throw new IllegalStateException("MongoDB clients have already been closed by the stop goal");
+        }
+        return clients.computeIfAbsent(new ServerAddress(host, port), address -> new MongoClient(address, options));
+    }
+
+    MongoClientOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Closes every client handed out.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (MongoClient client : clients.values()) {
+            client.close();
+        }
+        clients.clear();
+    }
+
+}
@@ -31,11 +31,15 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 @Mojo(name="mongo-import", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
 public class MongoImportMojo extends AbstractEmbeddedMongoMojo {
+
+    public enum ImportEngine {
+        MONGOIMPORT, DRIVER
+    }
+
     @Parameter
     private ImportDataConfig[] imports;
 
@@ -45,19 +49,76 @@ public class MongoImportMojo extends AbstractEmbeddedMongoMojo {
     @Parameter(property = "embedmongo.parallel", defaultValue = "false")
     private Boolean parallel;
 
+    /**
+     * The maximum number of imports run at the same time when
+     * {@code parallel} is {@code true}. Defaults to the number of available
+     * processors. With the driver import engine this is also the number of
+     * workers line-delimited files are split across, shared between the
+     * imports running at the same time.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.importConcurrency", defaultValue = "0")
+    private int importConcurrency;
+
+    /**
+     * When {@code importConcurrency} is not set, default it to the number of
+     * CPUs the container (cgroup v1 or v2) the build runs in may use rather
+     * than the number of processors the JVM reports.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.autoTune", defaultValue = "false")
+    private boolean autoTune;
+
+    /**
+     * When importing into a sharded cluster, split each sharded collection
+     * into chunks at shard key values sampled from its import file and
+     * spread them over the shards before loading it, so the data is
+     * distributed evenly from the start. Collections imported with
+     * {@code dropOnImport} are dropped and sharded again first.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.preSplit", defaultValue = "false")
+    private boolean preSplit;
+
+    /**
+     * The engine used to load the import files: {@code mongoimport} starts a
+     * mongoimport process per file, {@code driver} loads the files in-process
+     * through the mongo-java-driver using batched writes.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.importEngine", defaultValue = "mongoimport")
+    private String importEngine;
+
+    /**
+     * The number of documents sent per write when using the {@code driver}
+     * import engine.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.importBatchSize", defaultValue = "1000")
+    private int importBatchSize;
+
     @Override
     public void executeStart() throws MojoExecutionException, MojoFailureException {
+        if (isSeededFromCache()) {
+            getLog().info("Data directory restored from cache, skipping imports");
+            return;
+        }
+
         try {
             sendImportScript();
         } catch (Exception e) {
             throw new MojoExecutionException(e.getMessage(), e);
         }
 
+        onSeedCompleted();
     }
 
-    private void sendImportScript() throws IOException, InterruptedException, MojoExecutionException {
-        List<MongoImportProcess> pendingMongoProcess = new ArrayList<MongoImportProcess>();
-
+    private void sendImportScript() throws Exception {
         if(imports == null || imports.length == 0) {
             getLog().error("No imports found, check your configuration");
 
@@ -67,44 +128,98 @@ public class MongoImportMojo extends AbstractEmbeddedMongoMojo {
         getLog().info("Default import database: " + defaultImportDatabase);
 
         for(ImportDataConfig importData: imports) {
+            verify(importData);
+        }
 
-            getLog().info("Import " + importData);
+        ImportDataConfig[] toRun = preSplit ? preSplit() : imports;
 
-            verify(importData);
-            String database = importData.getDatabase();
+        ImportScheduler scheduler = new ImportScheduler(getImportConcurrency());
+        if (getImportEngine() == ImportEngine.DRIVER) {
+            // parallel imports split the workers between them, rather than each using all of them
+            int workers = parallel ? scheduler.workersPerImport(toRun.length) : scheduler.getConcurrency();
+            DriverImporter importer = new DriverImporter(getClient(), importBatchSize, workers, getLog());
+            runImports(scheduler, toRun, importData -> importer.importFile(getDatabase(importData), importData));
+        } else {
+            runImports(scheduler, toRun, this::importWithMongoImport);
+        }
+    }
 
-            if(StringUtils.isBlank(database)) {
-                database = defaultImportDatabase;
-            }
+    private ImportDataConfig[] preSplit() throws IOException, MojoExecutionException {
+        ChunkPreSplitter splitter = new ChunkPreSplitter(getClient(), getLog());
+        ImportDataConfig[] prepared = new ImportDataConfig[imports.length];
+        for (int i = 0; i < imports.length; i++) {
+            prepared[i] = splitter.prepare(getDatabase(imports[i]), imports[i]);
+        }
+        return prepared;
+    }
 
-            IMongoImportConfig mongoImportConfig = new MongoImportConfigBuilder()
-                    .version(getVersion())
-                    .net(new Net(getPort(), NetworkUtils.localhostIsIPv6()))
-                    .db(database)
-                    .collection(importData.getCollection())
-                    .upsert(importData.getUpsertOnImport())
-                    .dropCollection(importData.getDropOnImport())
-                    .importFile(importData.getFile())
-                    .jsonArray(true)
-                    .timeout(new Timeout(importData.getTimeout()))
-                    .build();
-
-            MongoImportExecutable mongoImport = MongoImportStarter.getDefaultInstance().prepare(mongoImportConfig);
-
-            MongoImportProcess importProcess = mongoImport.start();
-
-            if(parallel){
-                pendingMongoProcess.add(importProcess);
-            }else{
-                waitFor(importProcess);
-            }
+    private int getImportConcurrency() {
+        if (!autoTune || importConcurrency > 0) {
+            return importConcurrency;
+        }
+
+        ContainerLimits limits = ContainerLimits.detect();
+        getLog().info("Auto-tuning imports for " + limits + ", using " + limits.processors() + " worker(s)");
+        return limits.processors();
+    }
 
+    private void runImports(ImportScheduler scheduler, ImportDataConfig[] imports, ImportScheduler.ImportTask task) throws Exception {
+        if (parallel) {
+            getLog().info("Running " + imports.length + " import(s) on " + scheduler.getConcurrency() + " thread(s)");
+
+            scheduler.runAll(Arrays.asList(imports), importData -> {
+                getLog().info("Import " + importData);
+                task.run(importData);
+            });
+        } else {
+            for(ImportDataConfig importData: imports) {
+                getLog().info("Import " + importData);
+                task.run(importData);
+            }
         }
+    }
 
-        for(MongoImportProcess importProcess: pendingMongoProcess){
+    private void importWithMongoImport(ImportDataConfig importData) throws IOException, InterruptedException, MojoExecutionException {
+        IMongoImportConfig mongoImportConfig = new MongoImportConfigBuilder()
+                .version(getVersion())
+                .net(new Net(getPort(), NetworkUtils.localhostIsIPv6()))
+                .db(getDatabase(importData))
+                .collection(importData.getCollection())
+                .upsert(importData.getUpsertOnImport())
+                .dropCollection(importData.getDropOnImport())
+                .importFile(importData.getFile())
+                .jsonArray(importData.isJsonArray())
+                .timeout(new Timeout(importData.getTimeout()))
+                .build();
+
+        MongoImportExecutable mongoImport = MongoImportStarter.getDefaultInstance().prepare(mongoImportConfig);
+
+        MongoImportProcess importProcess = mongoImport.start();
+
+        try {
             waitFor(importProcess);
+        } catch (InterruptedException e) {
+            importProcess.stop();
+            throw e;
+        }
+    }
+
+    private ImportEngine getImportEngine() throws MojoExecutionException {
+        try {
+            return ImportEngine.valueOf(importEngine.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Unrecognised import engine '" + importEngine + "', expected one of mongoimport or driver");
+        }
+    }
+
+    private String getDatabase(ImportDataConfig importData) {
+        String database = importData.getDatabase();
+
+        if(StringUtils.isBlank(database)) {
+            database = defaultImportDatabase;
         }
 
+        return database;
     }
 
     private void waitFor(MongoImportProcess importProcess) throws InterruptedException, MojoExecutionException {
@@ -124,6 +239,7 @@ public class MongoImportMojo extends AbstractEmbeddedMongoMojo {
                 "\t<import>\n" +
                 "\t\t<file>[my file]</file>\n" +
                 "...");
+        Validate.isTrue(ImportDataConfig.FORMAT_JSON_ARRAY.equalsIgnoreCase(config.getFormat()) || ImportDataConfig.FORMAT_NDJSON.equalsIgnoreCase(config.getFormat()), "Unrecognised import format '" + config.getFormat() + "', expected one of jsonArray or ndjson");
         Validate.isTrue(StringUtils.isNotBlank(defaultImportDatabase) || StringUtils.isNotBlank(config.getDatabase()), "Database is required you can either define a defaultImportDatabase or a <database> on import tags");
     }
 
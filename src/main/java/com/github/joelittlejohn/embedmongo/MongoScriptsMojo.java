@@ -16,26 +16,39 @@
 package com.github.joelittlejohn.embedmongo;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.bson.BSONException;
+import org.bson.json.JsonParseException;
 
 import com.mongodb.CommandResult;
 import com.mongodb.DB;
-import com.mongodb.MongoClient;
 import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
 
 /**
  * When invoked, this goal connects to an instance of mongo and execute some
  * instructions to add data.
  *
- * You should use the same javascript syntax that you would use in the mongo
- * client.
+ * Files ending in <code>.json</code> hold database command documents in
+ * (extended) JSON, which are run through the driver with consecutive writes
+ * to a collection sent as bulk writes, and work with any server version.
+ * Any other file is JavaScript run through <code>db.eval</code>, and should
+ * use the same syntax that you would use in the mongo client; MongoDB 4.2
+ * and later no longer support it.
  *
  */
 @Mojo(name = "mongo-scripts", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
@@ -61,6 +74,69 @@ public class MongoScriptsMojo extends AbstractEmbeddedMongoMojo {
     @Parameter(property = "databaseName", required = true)
     private String databaseName;
 
+    /**
+     * The maximum number of consecutive write operations of a
+     * <code>.json</code> script sent to the server as one bulk write.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.scriptBatchSize", defaultValue = "1000")
+    private int scriptBatchSize;
+
+    /**
+     * How scripts may run concurrently: {@code none} runs them one after
+     * another in name order, {@code database} runs the scripts for
+     * different databases concurrently and those for the same database in
+     * name order, and {@code dependencies} runs them all concurrently except
+     * where a script declares <code>// @dependsOn other.js</code>. A script
+     * picks its database with <code>// @database name</code>.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.scriptGrouping", defaultValue = "none")
+    private String scriptGrouping;
+
+    /**
+     * The maximum number of scripts run at the same time when
+     * {@code scriptGrouping} is not {@code none}. Defaults to the number of
+     * available processors.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.scriptConcurrency", defaultValue = "0")
+    private int scriptConcurrency;
+
+    /**
+     * Record the name and checksum of each applied script in
+     * {@code ledgerCollection}, and only run scripts that are not recorded
+     * yet. Useful with a {@code databaseDirectory} kept between builds.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.ledger", defaultValue = "false")
+    private boolean ledger;
+
+    /**
+     * The collection of {@code databaseName} in which applied scripts are
+     * recorded.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.ledgerCollection", defaultValue = "embedmongoScripts")
+    private String ledgerCollection;
+
+    /**
+     * What to do with a script that changed since the ledger recorded it as
+     * applied: {@code fail} the build, {@code rerun} the script or
+     * {@code warn} and leave it out.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.changedScriptPolicy", defaultValue = "fail")
+    private String changedScriptPolicy;
+
+    private static final int COMMAND_NOT_FOUND = 59;
+
     public MongoScriptsMojo() {
     }
 
@@ -69,72 +145,160 @@ public class MongoScriptsMojo extends AbstractEmbeddedMongoMojo {
         this.scriptsDirectory = scriptsDirectory;
         this.databaseName = databaseName;
         this.scriptCharsetEncoding = scriptCharsetEncoding;
+        // the defaults Maven would otherwise inject
+        this.scriptBatchSize = CommandScriptRunner.DEFAULT_BATCH_SIZE;
+        this.scriptGrouping = "none";
     }
 
     @Override
     public void executeStart() throws MojoExecutionException, MojoFailureException {
-        DB db = connectToMongoAndGetDatabase();
+        if (isSeededFromCache()) {
+            getLog().info("Data directory restored from cache, skipping scripts");
+            return;
+        }
+
+        if (databaseName == null || databaseName.trim().length() == 0) {
+            throw new MojoExecutionException("Database name is missing");
+        }
 
         if (scriptsDirectory.isDirectory()) {
-            Scanner scanner = null;
-            StringBuilder instructions = new StringBuilder();
-            File[] files = scriptsDirectory.listFiles();
+            File[] files = scriptsDirectory.listFiles(File::isFile);
 
             if (files == null) {
                 getLog().info("Can't read scripts directory: " + scriptsDirectory.getAbsolutePath());
 
             } else {
+                // listFiles gives no particular order
+                Arrays.sort(files, Comparator.comparing(File::getName));
                 getLog().info("Folder " + scriptsDirectory.getAbsolutePath() + " contains " + files.length + " file(s):");
 
+                Charset charset = getScriptCharset();
+                ScriptLoader loader = new ScriptLoader(charset);
+                List<Script> scripts = new ArrayList<Script>();
                 for (File file : files) {
-                    if (file.isFile()) {
-                        try {
-                            if (scriptCharsetEncoding == null) {
-                                scanner = new Scanner(file);
-                            } else {
-                                // no need to check encoding, the constructor throws
-                                // an IllegalArgumentException if the charset cannot be determined
-                                // from the provided value.
-                                scanner = new Scanner(file, scriptCharsetEncoding);
-                            }
+                    try {
+                        scripts.add(Script.read(file, charset));
+                    } catch (IOException e) {
+                        throw new MojoExecutionException("Unable to read file with name '" + file.getName() + "'", e);
+                    }
+                }
 
-                            while (scanner.hasNextLine()) {
-                                instructions.append(scanner.nextLine()).append("\n");
-                            }
-                        } catch (FileNotFoundException e) {
-                            throw new MojoExecutionException("Unable to find file with name '" + file.getName() + "'", e);
-                        } catch (IllegalArgumentException e) {
-                            throw new MojoExecutionException("Unable to determine charset encoding for provided charset '" + scriptCharsetEncoding + "'", e);
-                        } finally {
-                            if (scanner != null) {
-                                scanner.close();
+                ScriptScheduler scheduler = new ScriptScheduler(getScriptGrouping(), scriptConcurrency, databaseName);
+                ScriptLedger ledger = this.ledger ? ScriptLedger.load(getMongoDatabase(databaseName).getCollection(ledgerCollection)) : null;
+                Set<Script> pending = ledger != null ? pending(ledger, scripts) : new HashSet<Script>(scripts);
+
+                if (scheduler.getConcurrency() > 1) {
+                    getLog().info("Running scripts grouped by " + scriptGrouping + " on up to " + scheduler.getConcurrency() + " threads");
+                }
+                try {
+                    // scripts left out still take part in the scheduling, so that their dependents wait for nothing
+                    scheduler.runAll(scripts, script -> {
+                        if (pending.contains(script)) {
+                            runScript(script, loader);
+                            if (ledger != null) {
+                                ledger.record(script);
                             }
                         }
-                        CommandResult result;
-                        try {
-                            result = db.doEval("(function() {" + instructions.toString() + "})();", new Object[0]);
-                        } catch (MongoException e) {
-                            throw new MojoExecutionException("Unable to execute file with name '" + file.getName() + "'", e);
-                        }
-                        if (!result.ok()) {
-                            getLog().error("- file " + file.getName() + " parsed with error: " + result.getErrorMessage());
-                            throw new MojoExecutionException("Error while executing instructions from file '" + file.getName() + "': " + result.getErrorMessage(), result.getException());
-                        }
-                        getLog().info("- file " + file.getName() + " parsed successfully");
-                    }
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while running scripts", e);
                 }
             }
             getLog().info("Data initialized with success");
         }
+
+        onSeedCompleted();
     }
 
-    DB connectToMongoAndGetDatabase() throws MojoExecutionException {
-        if (databaseName == null || databaseName.trim().length() == 0) {
-            throw new MojoExecutionException("Database name is missing");
+    private Set<Script> pending(ScriptLedger ledger, List<Script> scripts) throws MojoExecutionException, MojoFailureException {
+        ScriptLedger.ChangePolicy policy;
+        try {
+            policy = ScriptLedger.ChangePolicy.valueOf(changedScriptPolicy.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException("Unknown changedScriptPolicy '" + changedScriptPolicy + "', expected fail, rerun or warn");
+        }
+
+        try {
+            Set<Script> pending = ledger.pending(scripts, policy, getLog());
+            getLog().info((scripts.size() - pending.size()) + " script(s) already applied according to " + databaseName + "." + ledgerCollection + ", " + pending.size() + " to run");
+            return pending;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to compute script checksums", e);
+        }
+    }
+
+    private Charset getScriptCharset() throws MojoExecutionException {
+        try {
+            return scriptCharsetEncoding == null ? Charset.defaultCharset() : Charset.forName(scriptCharsetEncoding);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Unable to determine charset encoding for provided charset '" + scriptCharsetEncoding + "'", e);
+        }
+    }
+
+    private ScriptScheduler.Grouping getScriptGrouping() throws MojoFailureException {
+        try {
+            return ScriptScheduler.Grouping.valueOf(scriptGrouping.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException("Unknown scriptGrouping '" + scriptGrouping + "', expected none, database or dependencies");
+        }
+    }
+
+    private void runScript(Script script, ScriptLoader loader) throws MojoExecutionException {
+        String database = script.getDatabase() != null ? script.getDatabase() : databaseName;
+        if (script.isCommandScript()) {
+            runCommandScript(script.getFile(), database, loader);
+        } else {
+            runJavaScript(script.getFile(), database, loader);
+        }
+    }
+
+    private void runJavaScript(File file, String database, ScriptLoader loader) throws MojoExecutionException {
+        String instructions;
+        try {
+            instructions = loader.load(file);
+        } catch (NoSuchFileException e) {
+            throw new MojoExecutionException("Unable to find file with name '" + file.getName() + "'", e);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read file with name '" + file.getName() + "'", e);
+        }
+
+        CommandResult result;
+        try {
+            result = connectToMongoAndGetDatabase(database).doEval("(function() {" + instructions + "})();", new Object[0]);
+        } catch (MongoException e) {
+            if (e.getCode() == COMMAND_NOT_FOUND) {
+                throw new MojoExecutionException("Unable to execute file with name '" + file.getName() + "', this server no longer runs JavaScript through eval: rewrite it as a .json command script", e);
+            }
+            throw new MojoExecutionException("Unable to execute file with name '" + file.getName() + "'", e);
         }
+        if (!result.ok()) {
+            getLog().error("- file " + file.getName() + " parsed with error: " + result.getErrorMessage());
+            throw new MojoExecutionException("Error while executing instructions from file '" + file.getName() + "': " + result.getErrorMessage(), result.getException());
+        }
+        getLog().info("- file " + file.getName() + " parsed successfully");
+    }
+
+    private void runCommandScript(File file, String database, ScriptLoader loader) throws MojoExecutionException {
+        CommandScriptRunner runner = new CommandScriptRunner(this::getMongoDatabase, database, scriptBatchSize);
+        try (JsonDocumentReader script = loader.open(file)) {
+            runner.run(script);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read file with name '" + file.getName() + "'", e);
+        } catch (JsonParseException e) {
+            throw new MojoExecutionException("Unable to parse file with name '" + file.getName() + "': " + e.getMessage(), e);
+        } catch (MongoException | BSONException | IllegalArgumentException e) {
+            getLog().error("- file " + file.getName() + " failed at command " + runner.getCommands() + ": " + e.getMessage());
+            throw new MojoExecutionException("Error while executing command " + runner.getCommands() + " from file '" + file.getName() + "': " + e.getMessage(), e);
+        }
+        getLog().info("- file " + file.getName() + " executed successfully (" + runner.getCommands() + " command(s), " + runner.getBulkWrites() + " bulk write(s))");
+    }
+
+    DB connectToMongoAndGetDatabase(String name) {
+        return getClient().getDB(name);
+    }
 
-        MongoClient mongoClient = new MongoClient("localhost", getPort());
-        getLog().info("Connected to MongoDB");
-        return mongoClient.getDB(databaseName);
+    MongoDatabase getMongoDatabase(String name) {
+        return getClient().getDatabase(name);
     }
 }
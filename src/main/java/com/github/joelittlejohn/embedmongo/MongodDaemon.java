@@ -0,0 +1,283 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.bson.json.JsonParseException;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+
+/**
+ * A mongod left running between builds. Each daemon is identified by a hash
+ * of the configuration it was started with, and recorded in a state file
+ * named after that hash holding its pid and port, so that a later build
+ * with the same configuration can attach to it instead of starting another.
+ * The state file is only read and written while holding an exclusive lock on
+ * a lock file next to it, so that concurrent builds never start two daemons.
+ */
+class MongodDaemon {
+
+    private static final String STATE_SUFFIX = ".json";
+
+    private final File directory;
+    private final String hash;
+    private final AtomicInteger pendingSeeds = new AtomicInteger();
+
+    private long pid;
+    private String host;
+    private int port;
+    private String version;
+    private String seedFingerprint;
+    private volatile String expectedFingerprint;
+
+    MongodDaemon(File directory, String hash) {
+        this.directory = directory;
+        this.hash = hash;
+    }
+
+    /**
+     * @param configuration everything that would make a running mongod
+     *            unsuitable for a build if it differed
+     */
+    static MongodDaemon forConfiguration(File directory, String configuration) {
+        String hash = FileUtils.hex(FileUtils.sha256().digest(configuration.getBytes(UTF_8)));
+        return new MongodDaemon(directory, hash.substring(0, 16));
+    }
+
+    /**
+     * @return every daemon recorded in the given directory, whether or not it
+     *         is still running
+     */
+    static List<MongodDaemon> all(File directory) {
+        List<MongodDaemon> daemons = new ArrayList<MongodDaemon>();
+        File[] stateFiles = directory.listFiles((dir, name) -> name.endsWith(STATE_SUFFIX));
+        if (stateFiles != null) {
+            for (File stateFile : stateFiles) {
+                String name = stateFile.getName();
+                daemons.add(new MongodDaemon(directory, name.substring(0, name.length() - STATE_SUFFIX.length())));
+            }
+        }
+        return daemons;
+    }
+
+    /**
+     * Takes the exclusive lock guarding this daemon's state file, waiting for
+     * another build to release it.
+     *
+     * @return the lock, released when closed
+     */
+    Closeable lock() throws IOException {
+        Files.createDirectories(directory.toPath());
+        FileChannel channel = FileChannel.open(new File(directory, hash + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+        } catch (IOException | OverlappingFileLockException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Reads the state file.
+     *
+     * @return {@code false} if there is no state file or it is unreadable
+     */
+    boolean load() throws IOException {
+        File stateFile = getStateFile();
+        if (!stateFile.isFile()) {
+            return false;
+        }
+
+        Document state;
+        try {
+            state = Document.parse(new String(Files.readAllBytes(stateFile.toPath()), UTF_8));
+        } catch (JsonParseException e) {
+            return false;
+        }
+        if (!(state.get("pid") instanceof Number) || !(state.get("port") instanceof Number)) {
+            return false;
+        }
+
+        pid = ((Number) state.get("pid")).longValue();
+        host = state.get("host", "localhost");
+        port = ((Number) state.get("port")).intValue();
+        version = state.getString("version");
+        seedFingerprint = state.getString("seedFingerprint");
+        return true;
+    }
+
+    /**
+     * Records a newly started daemon.
+     */
+    void save(long pid, String host, int port, String version) throws IOException {
+        this.pid = pid;
+        this.host = host;
+        this.port = port;
+        this.version = version;
+        this.seedFingerprint = null;
+        write();
+    }
+
+    private void write() throws IOException {
+        Document state = new Document("hash", hash)
+                .append("pid", pid)
+                .append("host", host)
+                .append("port", port)
+                .append("version", version)
+                .append("seedFingerprint", seedFingerprint);
+
+        Files.createDirectories(directory.toPath());
+        File temporary = new File(directory, hash + STATE_SUFFIX + ".tmp");
+        Files.write(temporary.toPath(), state.toJson().getBytes(UTF_8));
+        Files.move(temporary.toPath(), getStateFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the state file and everything the daemon kept in its home
+     * directory.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(getStateFile().toPath());
+        if (getHome().exists()) {
+            FileUtils.delete(getHome().toPath());
+        }
+    }
+
+    /**
+     * Records that the given seed data is loaded once the given number of
+     * seeding executions have completed, unless it already was by an
+     * earlier build.
+     */
+    void expectSeeds(String fingerprint, int count) {
+        expectedFingerprint = fingerprint;
+        pendingSeeds.set(count);
+    }
+
+    /**
+     * @return {@code true} if the seed data expected by this build was
+     *         loaded by an earlier one
+     */
+    boolean isSeeded() {
+        return expectedFingerprint != null && expectedFingerprint.equals(seedFingerprint);
+    }
+
+    /**
+     * Records the seed data as loaded once the last outstanding seeding
+     * execution has completed.
+     *
+     * @return {@code true} if this was the last outstanding seeding execution
+     */
+    boolean seedCompleted() throws IOException {
+        if (expectedFingerprint == null || isSeeded() || pendingSeeds.decrementAndGet() != 0) {
+            return false;
+        }
+
+        synchronized (MongodDaemon.class) {
+            try (Closeable lock = lock()) {
+                seedFingerprint = expectedFingerprint;
+                write();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the mongod listening on the recorded port is
+     *         the one with the recorded pid, and not some other process that
+     *         reused the port after the daemon died
+     */
+    boolean isRunning() {
+        MongoClientOptions options = MongoClientOptions.builder()
+                .serverSelectionTimeout(1000)
+                .connectTimeout(1000)
+                .socketTimeout(5000)
+                .build();
+
+        MongoClient client = new MongoClient(new ServerAddress(host, port), options);
+        try {
+            Object runningPid = client.getDatabase("admin").runCommand(new Document("serverStatus", 1)).get("pid");
+            return runningPid instanceof Number && ((Number) runningPid).longValue() == pid;
+        } catch (MongoCommandException e) {
+            // serverStatus needs authentication when auth is enabled, the pid
+            // can only be checked from here
+            return MongodShutdown.isAlive(pid);
+        } catch (MongoException e) {
+            return false;
+        } finally {
+            client.close();
+        }
+    }
+
+    String getHash() {
+        return hash;
+    }
+
+    long getPid() {
+        return pid;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    File getStateFile() {
+        return new File(directory, hash + STATE_SUFFIX);
+    }
+
+    /**
+     * @return the directory holding the daemon's log and, unless another one
+     *         is configured, its data files
+     */
+    File getHome() {
+        return new File(directory, hash);
+    }
+
+    File getDataDirectory() {
+        return new File(getHome(), "db");
+    }
+
+    File getLogFile() {
+        return new File(getHome(), "mongod.log");
+    }
+
+}
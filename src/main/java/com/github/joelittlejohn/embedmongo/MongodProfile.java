@@ -0,0 +1,186 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Named sets of mongod options. Each option records the versions and storage
+ * engine it needs, so options the selected mongod would reject at startup are
+ * dropped instead.
+ */
+enum MongodProfile {
+
+    /**
+     * Throw durability away: no journal, no periodic flush, no compression
+     * and no diagnostic data capture.
+     */
+    FASTEST_TEST("fastest-test", Boolean.FALSE, 0,
+            Option.wiredTiger("--wiredTigerCollectionBlockCompressor=none", 3, 0),
+            Option.wiredTiger("--wiredTigerJournalCompressor=none", 3, 0),
+            Option.since("--setParameter=diagnosticDataCollectionEnabled=false", 3, 2)),
+
+    /**
+     * Journal every write and flush data files at mongod's default interval.
+     */
+    DURABLE("durable", Boolean.TRUE, 60),
+
+    /**
+     * The smallest WiredTiger cache and oplog mongod accepts, for
+     * constrained CI agents.
+     */
+    LOW_MEMORY("low-memory", null, null,
+            Option.wiredTiger("--wiredTigerCacheSizeGB=1", 3, 0, 3, 4),
+            Option.wiredTiger("--wiredTigerCacheSizeGB=0.25", 3, 4),
+            Option.since("--oplogSize=64", 1, 0),
+            Option.since("--setParameter=diagnosticDataCollectionEnabled=false", 3, 2)),
+
+    /**
+     * Fail queries that cannot use an index instead of scanning the whole
+     * collection, to catch missing indexes in tests.
+     */
+    NO_TABLE_SCAN("no-table-scan", null, null,
+            Option.since("--notablescan", 1, 0));
+
+    /** {@code --nojournal} was removed in 6.1. */
+    private static final int NO_JOURNAL_REMOVED = version(6, 1);
+
+    private final String profileName;
+    private final Boolean journal;
+    private final Integer syncDelay;
+    private final List<Option> options;
+
+    MongodProfile(String profileName, Boolean journal, Integer syncDelay, Option... options) {
+        this.profileName = profileName;
+        this.journal = journal;
+        this.syncDelay = syncDelay;
+        this.options = Arrays.asList(options);
+    }
+
+    static MongodProfile forName(String profileName) {
+        for (MongodProfile profile : values()) {
+            if (profile.profileName.equals(profileName)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown profile \"" + profileName + "\", expected one of " + names());
+    }
+
+    static List<String> names() {
+        List<String> names = new ArrayList<String>();
+        for (MongodProfile profile : values()) {
+            names.add(profile.profileName);
+        }
+        return names;
+    }
+
+    String getProfileName() {
+        return profileName;
+    }
+
+    /**
+     * @return whether the profile wants the journal on, or the given value
+     *         when it has no opinion or the version cannot turn it off
+     */
+    boolean journal(String version, boolean configured) {
+        if (journal == null || (!journal && parse(version) >= NO_JOURNAL_REMOVED)) {
+            return configured;
+        }
+        return journal;
+    }
+
+    /**
+     * @return the syncdelay the profile wants, or {@code null} to leave it
+     */
+    Integer getSyncDelay() {
+        return syncDelay;
+    }
+
+    /**
+     * @return the profile's command line options that the given version and
+     *         storage engine accept, logging any that are dropped
+     */
+    List<String> args(String version, String storageEngine, Log log) {
+        int parsed = parse(version);
+        boolean wiredTiger = "wiredTiger".equalsIgnoreCase(storageEngine);
+
+        List<String> args = new ArrayList<String>();
+        for (Option option : options) {
+            if (option.wiredTigerOnly && !wiredTiger) {
+                log.debug("Profile " + profileName + ": dropping " + option.arg + ", it needs the wiredTiger storage engine");
+            } else if (parsed < option.minVersion || parsed >= option.maxVersion) {
+                log.debug("Profile " + profileName + ": dropping " + option.arg + ", not supported by MongoDB " + version);
+            } else {
+                args.add(option.arg);
+            }
+        }
+        return args;
+    }
+
+    /**
+     * @return the version as {@code major * 1000 + minor}, or the highest
+     *         value when it cannot be parsed (e.g. a newer, unknown version)
+     */
+    static int parse(String version) {
+        Matcher matcher = EphemeralStorage.MAJOR_MINOR.matcher(version);
+        if (!matcher.find()) {
+            return Option.NO_LIMIT - 1;
+        }
+        return version(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    }
+
+    static int version(int major, int minor) {
+        return major * 1000 + minor;
+    }
+
+    private static final class Option {
+        static final int NO_LIMIT = Integer.MAX_VALUE;
+
+        private final String arg;
+        private final int minVersion;
+        private final int maxVersion;
+        private final boolean wiredTigerOnly;
+
+        private Option(String arg, int minVersion, int maxVersion, boolean wiredTigerOnly) {
+            this.arg = arg;
+            this.minVersion = minVersion;
+            this.maxVersion = maxVersion;
+            this.wiredTigerOnly = wiredTigerOnly;
+        }
+
+        static Option since(String arg, int major, int minor) {
+            return new Option(arg, version(major, minor), NO_LIMIT, false);
+        }
+
+        static Option wiredTiger(String arg, int major, int minor) {
+            return new Option(arg, version(major, minor), NO_LIMIT, true);
+        }
+
+        /**
+         * @return a wiredTiger option that was replaced in the version
+         *         {@code untilMajor.untilMinor}
+         */
+        static Option wiredTiger(String arg, int major, int minor, int untilMajor, int untilMinor) {
+            return new Option(arg, version(major, minor), version(untilMajor, untilMinor), true);
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.apache.maven.plugin.logging.Log;
+import org.bson.Document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.ServerAddress;
+
+import de.flapdoodle.embed.mongo.AbstractMongoProcess;
+import de.flapdoodle.embed.mongo.config.Net;
+
+/**
+ * Stops mongod (or mongos) within a bounded time: first the shutdown command, then
+ * SIGTERM and finally SIGKILL, each step only if mongod is still running
+ * once the previous one's deadline has passed.
+ */
+class MongodShutdown {
+
+    static final long DEFAULT_SHUTDOWN_TIMEOUT = 10000;
+    static final long DEFAULT_KILL_TIMEOUT = 5000;
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final long shutdownTimeout;
+    private final long killTimeout;
+    private final Log log;
+
+    /**
+     * @param shutdownTimeout how long to wait for mongod to exit after the
+     *            shutdown command, in milliseconds
+     * @param killTimeout how long to wait for mongod to exit after SIGTERM
+     *            and after SIGKILL, in milliseconds
+     */
+    MongodShutdown(long shutdownTimeout, long killTimeout, Log log) {
+        this.shutdownTimeout = shutdownTimeout;
+        this.killTimeout = killTimeout;
+        this.log = log;
+    }
+
+    /**
+     * Stops all the given processes concurrently.
+     */
+    void stopAll(List<? extends AbstractMongoProcess<?, ?, ?>> processes) {
+        if (processes.size() <= 1) {
+            processes.forEach(this::stop);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(processes.size(), new DaemonThreadFactory("embedmongo-shutdown"));
+        try {
+            List<Callable<Void>> stops = new ArrayList<Callable<Void>>();
+            for (final AbstractMongoProcess<?, ?, ?> process : processes) {
+                stops.add(() -> {
+                    stop(process);
+                    return null;
+                });
+            }
+            executor.invokeAll(stops);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    void stop(final AbstractMongoProcess<?, ?, ?> process) {
+        Net net = process.getConfig().net();
+        ServerAddress address;
+        try {
+            address = new ServerAddress(net.getServerAddress(), net.getPort());
+        } catch (UnknownHostException e) {
+            address = null;
+        }
+        stop(address, process.getProcessId(), process::isProcessRunning);
+
+        // mongod has exited by now, this only releases what flapdoodle holds for it
+        process.stop();
+    }
+
+    /**
+     * Stops a mongod this JVM did not start, such as a daemon left running by
+     * an earlier build.
+     */
+    void stop(ServerAddress address, final long pid) {
+        stop(address, pid, () -> isAlive(pid));
+    }
+
+    private void stop(ServerAddress address, long pid, BooleanSupplier running) {
+        boolean sent = address != null && sendShutdownCommand(address);
+        if (!awaitExit(running, sent ? shutdownTimeout : 0)) {
+            log.warn("mongod (pid " + pid + ") did not shut down within " + shutdownTimeout + "ms, sending SIGTERM");
+            signal(pid, false);
+
+            if (!awaitExit(running, killTimeout)) {
+                log.warn("mongod (pid " + pid + ") did not exit within " + killTimeout + "ms of SIGTERM, sending SIGKILL");
+                signal(pid, true);
+                awaitExit(running, killTimeout);
+            }
+        }
+    }
+
+    private boolean sendShutdownCommand(ServerAddress address) {
+        MongoClientOptions options = MongoClientOptions.builder()
+                .serverSelectionTimeout(1000)
+                .connectTimeout(1000)
+                .socketTimeout((int) Math.max(shutdownTimeout, 1000))
+                .build();
+
+        MongoClient client = new MongoClient(address, options);
+        try {
+            client.getDatabase("admin").runCommand(new Document("shutdown", 1).append("force", true));
+            return true;
+        } catch (MongoSocketException e) {
+            // mongod closes the connection as it shuts down
+            return true;
+        } catch (MongoException e) {
+            log.debug("Shutdown command failed: " + e.getMessage());
+            return false;
+        } finally {
+            client.close();
+        }
+    }
+
+    private static boolean awaitExit(BooleanSupplier running, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (running.getAsBoolean()) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if a process with the given pid exists, checked
+     *         with {@code kill -0} (so only on platforms other than Windows)
+     */
+    static boolean isAlive(long pid) {
+        try {
+            Process check = new ProcessBuilder("kill", "-0", String.valueOf(pid)).redirectErrorStream(true).start();
+            return check.waitFor(5, TimeUnit.SECONDS) && check.exitValue() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void signal(long pid, boolean kill) {
+        boolean windows = System.getProperty("os.name").toLowerCase().indexOf("win") != -1;
+        List<String> command = new ArrayList<String>();
+        if (windows) {
+            command.add("taskkill");
+            if (kill) {
+                command.add("/F");
+            }
+            command.add("/PID");
+        } else {
+            command.add("kill");
+            command.add(kill ? "-KILL" : "-TERM");
+        }
+        command.add(String.valueOf(pid));
+
+        try {
+            new ProcessBuilder(command).redirectErrorStream(true).start().waitFor(killTimeout, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            log.warn("Unable to signal mongod (pid " + pid + ")", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
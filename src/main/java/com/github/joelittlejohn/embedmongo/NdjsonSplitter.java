@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * Cuts line-delimited JSON files into byte ranges that start and end on line
+ * boundaries, so that separate workers can read and import each range of a
+ * single large file independently. Ranges are read through memory-mapped
+ * buffers.
+ */
+final class NdjsonSplitter {
+
+    /** Files smaller than this per worker are not worth splitting further. */
+    static final long MIN_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    /** Keeps every range within what a single mapped buffer can address. */
+    static final long MAX_CHUNK_SIZE = 1024L * 1024 * 1024;
+
+    interface LineHandler {
+        void line(String line) throws MojoExecutionException;
+    }
+
+    static final class Chunk {
+        final long start;
+        final long length;
+
+        Chunk(long start, long length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + (start + length) + ")";
+        }
+    }
+
+    private NdjsonSplitter() {
+    }
+
+    /**
+     * @return how many ranges a file of the given size should be cut into
+     *         for the given number of workers
+     */
+    static int chunkCount(long size, int workers) {
+        long bySize = (size + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE;
+        long byMapLimit = (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE;
+        return (int) Math.max(1, Math.max(byMapLimit, Math.min(workers, bySize)));
+    }
+
+    /**
+     * Splits the file into roughly equal ranges, moving each boundary forward
+     * to just after the next newline. Fewer ranges than requested are returned
+     * when lines are long enough for boundaries to coincide.
+     */
+    static List<Chunk> split(FileChannel channel, int count) throws IOException {
+        long size = channel.size();
+        List<Chunk> chunks = new ArrayList<Chunk>(count);
+
+        long start = 0;
+        for (int i = 1; i <= count && start < size; i++) {
+            long end = i == count ? size : nextLineStart(channel, Math.max(start, size * i / count), size);
+            if (end > start) {
+                chunks.add(new Chunk(start, end - start));
+                start = end;
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Reads each non-blank line of the given range, in order.
+     */
+    static void readLines(FileChannel channel, Chunk chunk, LineHandler handler) throws IOException, MojoExecutionException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.length);
+        byte[] line = new byte[8192];
+
+        while (buffer.hasRemaining()) {
+            int length = 0;
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    byte[] grown = new byte[line.length * 2];
+                    System.arraycopy(line, 0, grown, 0, length);
+                    line = grown;
+                }
+                line[length++] = b;
+            }
+
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+
+            String text = new String(line, 0, length, StandardCharsets.UTF_8);
+            if (!text.trim().isEmpty()) {
+                handler.line(text);
+            }
+        }
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+
+        return size;
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.descriptor.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Reads the configuration of this plugin's executions from the project
+ * model, for goals that need to know how other embedmongo executions in the
+ * same project are configured.
+ */
+final class PluginExecutions {
+
+    static final String GROUP_ID = "com.github.joelittlejohn.embedmongo";
+    static final String ARTIFACT_ID = "embedmongo-maven-plugin";
+
+    private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    private PluginExecutions() {
+    }
+
+    /**
+     * @return the configuration of every execution of the given goal, with
+     *         plugin-level configuration merged in; never {@code null}
+     */
+    static List<Xpp3Dom> configurations(MavenProject project, String goal) {
+        List<Xpp3Dom> configurations = new ArrayList<Xpp3Dom>();
+        Plugin plugin = findPlugin(project);
+
+        if (plugin != null) {
+            Xpp3Dom pluginConfiguration = (Xpp3Dom) plugin.getConfiguration();
+            for (PluginExecution execution : plugin.getExecutions()) {
+                if (execution.getGoals().contains(goal)) {
+                    Xpp3Dom configuration = (Xpp3Dom) execution.getConfiguration();
+                    if (configuration == null) {
+                        configuration = new Xpp3Dom("configuration");
+                    }
+                    configurations.add(Xpp3Dom.mergeXpp3Dom(new Xpp3Dom(configuration), pluginConfiguration));
+                }
+            }
+        }
+
+        return configurations;
+    }
+
+    /**
+     * @return the value of the named child of a configuration, or
+     *         {@code null} if it is not configured
+     */
+    static String value(Xpp3Dom configuration, String name) {
+        Xpp3Dom child = configuration.getChild(name);
+        return child == null ? null : child.getValue();
+    }
+
+    /**
+     * Resolves the value a parameter would be given in an execution of
+     * another project: the configured value, else the property the parameter
+     * reads, else its default. Expressions are looked up in the project and
+     * system properties; any that cannot be are left in place, so the value
+     * will not match one resolved by Maven.
+     *
+     * @return the resolved value, or {@code null} if the parameter is not set
+     */
+    static String resolve(MavenProject project, Xpp3Dom configuration, Parameter parameter) {
+        String value = value(configuration, parameter.getName());
+        if (value == null && parameter.getAlias() != null) {
+            value = value(configuration, parameter.getAlias());
+        }
+        if (value != null) {
+            return interpolate(project, value);
+        }
+        if (parameter.getExpression() != null) {
+            value = interpolate(project, parameter.getExpression());
+            if (value.equals(parameter.getExpression())) {
+                // the property is not set
+                value = null;
+            }
+        }
+        if (value == null && parameter.getDefaultValue() != null) {
+            value = interpolate(project, parameter.getDefaultValue());
+        }
+        return value;
+    }
+
+    private static String interpolate(MavenProject project, String value) {
+        Matcher matcher = EXPRESSION.matcher(value);
+        StringBuffer interpolated = new StringBuffer();
+        while (matcher.find()) {
+            String property = property(project, matcher.group(1));
+            matcher.appendReplacement(interpolated, Matcher.quoteReplacement(property != null ? property : matcher.group()));
+        }
+        matcher.appendTail(interpolated);
+        return interpolated.toString();
+    }
+
+    private static String property(MavenProject project, String name) {
+        if (("basedir".equals(name) || "project.basedir".equals(name)) && project.getBasedir() != null) {
+            return project.getBasedir().getAbsolutePath();
+        }
+        String value = project.getProperties().getProperty(name);
+        return value != null ? value : System.getProperty(name);
+    }
+
+    /**
+     * Resolves a configured path against the project base directory.
+     */
+    static File file(MavenProject project, String path) {
+        File file = new File(path);
+        if (!file.isAbsolute() && project.getBasedir() != null) {
+            file = new File(project.getBasedir(), path);
+        }
+        return file;
+    }
+
+    private static Plugin findPlugin(MavenProject project) {
+        if (project == null || project.getBuildPlugins() == null) {
+            return null;
+        }
+        for (Object buildPlugin : project.getBuildPlugins()) {
+            Plugin plugin = (Plugin) buildPlugin;
+            if (ARTIFACT_ID.equals(plugin.getArtifactId()) && GROUP_ID.equals(plugin.getGroupId())) {
+                return plugin;
+            }
+        }
+        return null;
+    }
+
+}
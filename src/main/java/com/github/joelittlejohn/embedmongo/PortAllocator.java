@@ -0,0 +1,156 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hands out ports that no other build on the host is using. A port is leased
+ * by holding an exclusive lock on a file named after it in a directory shared
+ * by all builds, and checked to be free before it is handed out. The lease is
+ * held while mongod runs. The operating system drops the lock if the build
+ * dies, so leases are never left behind.
+ */
+class PortAllocator {
+
+    private static final int OS_ATTEMPTS = 100;
+
+    private final File directory;
+    private final int first;
+    private final int last;
+
+    /**
+     * @param first the first port of the range to allocate from, or
+     *            {@code 0} to let the operating system suggest ports
+     * @param last the last port of the range, inclusive
+     */
+    PortAllocator(File directory, int first, int last) {
+        this.directory = directory;
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Parses a range such as {@code 27100-27199}; an empty range lets the
+     * operating system suggest ports.
+     */
+    static PortAllocator forRange(File directory, String range) {
+        if (range == null || range.trim().isEmpty()) {
+            return new PortAllocator(directory, 0, 0);
+        }
+
+        String[] bounds = range.trim().split("\\s*-\\s*");
+        try {
+            int first = Integer.parseInt(bounds[0]);
+            int last = bounds.length == 2 ? Integer.parseInt(bounds[1]) : -1;
+            if (bounds.length == 2 && first > 0 && first <= last && last <= 65535) {
+                return new PortAllocator(directory, first, last);
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid port range '" + range + "', expected e.g. 27100-27199");
+    }
+
+    /**
+     * Leases a free port, starting from a random point in the range so that
+     * concurrent builds rarely contend for the same one.
+     */
+    Lease reserve() throws IOException {
+        Files.createDirectories(directory.toPath());
+
+        int attempts = first == 0 ? OS_ATTEMPTS : last - first + 1;
+        int offset = ThreadLocalRandom.current().nextInt(attempts);
+        for (int i = 0; i < attempts; i++) {
+            int port = first == 0 ? NetworkUtils.allocateRandomPort() : first + (offset + i) % attempts;
+            Lease lease = tryLease(port);
+            if (lease != null) {
+                if (isFree(port)) {
+                    return lease;
+                }
+                lease.close();
+            }
+        }
+
+        throw new IOException(first == 0
+                ? "Unable to lease a free port after " + OS_ATTEMPTS + " attempts"
+                : "No free port left in range " + first + "-" + last);
+    }
+
+    private Lease tryLease(int port) throws IOException {
+        FileChannel channel = FileChannel.open(new File(directory, port + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                return new Lease(port, channel, lock);
+            }
+        } catch (OverlappingFileLockException e) {
+            // leased by another execution in this JVM
+        }
+        channel.close();
+        return null;
+    }
+
+    static boolean isFree(int port) {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.setReuseAddress(false);
+            socket.bind(new InetSocketAddress(port));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A port held for one mongod until it is closed.
+     */
+    static final class Lease implements Closeable {
+
+        private final int port;
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private Lease(int port, FileChannel channel, FileLock lock) {
+            this.port = port;
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        int getPort() {
+            return port;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lock.release();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+}
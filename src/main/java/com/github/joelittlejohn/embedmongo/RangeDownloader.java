@@ -0,0 +1,360 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.io.progress.IProgressListener;
+import de.flapdoodle.embed.process.store.IDownloader;
+
+/**
+ * Downloads a distribution in parallel byte ranges when the server accepts
+ * them, keeping each range in its own partial file under
+ * <code>.partial</code> in the artifact store so an interrupted download
+ * carries on where it stopped, in this build or the next.
+ * <p>
+ * The ranges are joined into the archive in a single pass that also computes
+ * its SHA-256, which is checked against the <code>.sha256</code> file
+ * published next to the archive, when there is one.
+ */
+class RangeDownloader implements IDownloader {
+
+    static final long MIN_RANGE_SIZE = 4 * 1024 * 1024;
+    static final int ATTEMPTS = 3;
+
+    private static final String VALIDATOR_FILE = "validator";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int connections;
+
+    /**
+     * @param connections the maximum number of ranges to fetch at once
+     */
+    RangeDownloader(int connections) {
+        this.connections = Math.max(1, connections);
+    }
+
+    @Override
+    public String getDownloadUrl(IDownloadConfig config, Distribution distribution) {
+        return config.getDownloadPath().getPath(distribution) + config.getPackageResolver().getPath(distribution);
+    }
+
+    @Override
+    public File download(IDownloadConfig config, Distribution distribution) throws IOException {
+        String url = getDownloadUrl(config, distribution);
+        String name = url.substring(url.lastIndexOf('/') + 1);
+        IProgressListener progress = config.getProgressListener();
+        progress.start("Download " + distribution);
+
+        Remote remote = probe(config, url);
+        List<long[]> ranges = ranges(remote.length, remote.acceptsRanges ? connections : 1);
+        String validator = validator(remote, ranges);
+        Path partial = config.getArtifactStorePath().asFile().toPath().resolve(".partial").resolve(name);
+        discardIfStale(partial, validator);
+
+        progress.info("Download " + distribution, "Fetching " + url + " in " + ranges.size() + " range(s)");
+        fetchAll(config, url, partial, ranges, remote, validator);
+
+        String expected = publishedChecksum(config, url + ".sha256");
+        File archive = File.createTempFile("embedmongo-", "-" + name);
+        String actual;
+        try {
+            actual = join(partial, ranges, archive.toPath());
+        } catch (IOException e) {
+            Files.delete(archive.toPath());
+            FileUtils.delete(partial);
+            throw e;
+        }
+
+        FileUtils.delete(partial);
+        if (expected == null) {
+            progress.info("Download " + distribution, "No published SHA-256 for " + url + ", skipping verification");
+        } else if (!expected.equalsIgnoreCase(actual)) {
+            Files.delete(archive.toPath());
+            throw new IOException("SHA-256 of " + url + " is " + actual + " but " + expected + " was published");
+        }
+
+        progress.done("Download " + distribution);
+        return archive;
+    }
+
+    /**
+     * Splits {@code length} bytes into up to {@code count} ranges of at least
+     * {@link #MIN_RANGE_SIZE} bytes, as inclusive {@code [first, last]}
+     * offsets. An unknown length gives a single open-ended range.
+     */
+    static List<long[]> ranges(long length, int count) {
+        List<long[]> ranges = new ArrayList<long[]>();
+        if (length < 0) {
+            ranges.add(new long[] {0, -1});
+            return ranges;
+        }
+
+        int actual = (int) Math.max(1, Math.min(count, length / MIN_RANGE_SIZE));
+        long size = length / actual;
+        for (int i = 0; i < actual; i++) {
+            long first = i * size;
+            long last = i == actual - 1 ? length - 1 : first + size - 1;
+            ranges.add(new long[] {first, last});
+        }
+        return ranges;
+    }
+
+    /**
+     * @return what identifies this version of the remote file and the way it
+     *         is split, so partial files of an older version, or cut at other
+     *         offsets, are not resumed
+     */
+    private static String validator(Remote remote, List<long[]> ranges) {
+        StringBuilder validator = new StringBuilder(remote.length + "|" + remote.etag + "|" + remote.lastModified);
+        for (long[] range : ranges) {
+            validator.append('|').append(range[0]).append('-').append(range[1]);
+        }
+        return validator.toString();
+    }
+
+    private void fetchAll(final IDownloadConfig config, final String url, final Path partial, List<long[]> ranges, final Remote remote, String validator) throws IOException {
+        Files.createDirectories(partial);
+        Files.write(partial.resolve(VALIDATOR_FILE), validator.getBytes(StandardCharsets.UTF_8));
+
+        if (ranges.size() == 1) {
+            fetchWithRetries(config, url, partial.resolve("0"), ranges.get(0), remote.acceptsRanges);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(ranges.size(), new DaemonThreadFactory("embedmongo-download"));
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < ranges.size(); i++) {
+                final Path part = partial.resolve(String.valueOf(i));
+                final long[] range = ranges.get(i);
+                futures.add(executor.submit(() -> {
+                    fetchWithRetries(config, url, part, range, true);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("Unable to download " + url, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + url, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void fetchWithRetries(IDownloadConfig config, String url, Path part, long[] range, boolean resumable) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                fetch(config, url, part, range, resumable);
+                return;
+            } catch (IOException e) {
+                if (attempt == ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the rest of a range to its partial file.
+     */
+    private static void fetch(IDownloadConfig config, String url, Path part, long[] range, boolean resumable) throws IOException {
+        long existing = Files.exists(part) ? Files.size(part) : 0;
+        long first = range[0] + existing;
+        if (range[1] >= 0 && first > range[1]) {
+            return;
+        }
+
+        URLConnection connection = open(config, url);
+        boolean ranged = resumable && (first > 0 || range[1] >= 0);
+        if (ranged) {
+            connection.setRequestProperty("Range", "bytes=" + first + "-" + (range[1] >= 0 ? range[1] : ""));
+        }
+
+        int status = connection instanceof HttpURLConnection ? ((HttpURLConnection) connection).getResponseCode() : 200;
+        if (status == 416 && existing > 0) {
+            return;
+        }
+        if (status >= 400) {
+            throw new IOException("Unable to download " + url + " (status " + status + ")");
+        }
+        boolean append = ranged && status == HttpURLConnection.HTTP_PARTIAL;
+        if (!append && (range[0] > 0 || (range[1] >= 0 && connection.getContentLengthLong() != range[1] + 1))) {
+            throw new IOException("Server ignored the range request for " + url + " (status " + status + ")");
+        }
+
+        StandardOpenOption mode = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        try (InputStream in = connection.getInputStream();
+             OutputStream out = Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            copy(in, out);
+        }
+
+        if (range[1] >= 0 && Files.size(part) != range[1] - range[0] + 1) {
+            throw new IOException("Connection closed before the end of bytes " + range[0] + "-" + range[1] + " of " + url);
+        }
+    }
+
+    /**
+     * Concatenates the partial files into the archive, computing its SHA-256
+     * on the way. Each partial file must hold exactly its range, so a bad
+     * part fails here rather than producing an archive that is only caught
+     * by the published checksum, if there is one.
+     *
+     * @return the hex encoded SHA-256 of the archive
+     */
+    static String join(Path partial, List<long[]> ranges, Path archive) throws IOException {
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            long size = Files.size(partial.resolve(String.valueOf(i)));
+            if (range[1] >= 0 && size != range[1] - range[0] + 1) {
+                throw new IOException("Partial file " + i + " holds " + size + " bytes but bytes " + range[0] + "-" + range[1] + " were expected");
+            }
+        }
+
+        MessageDigest digest = FileUtils.sha256();
+        try (OutputStream out = new DigestOutputStream(Files.newOutputStream(archive), digest)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                Files.copy(partial.resolve(String.valueOf(i)), out);
+            }
+        }
+        return FileUtils.hex(digest.digest());
+    }
+
+    private static void discardIfStale(Path partial, String validator) throws IOException {
+        Path validatorFile = partial.resolve(VALIDATOR_FILE);
+        if (Files.exists(partial)
+                && !(Files.exists(validatorFile) && new String(Files.readAllBytes(validatorFile), StandardCharsets.UTF_8).equals(validator))) {
+            FileUtils.delete(partial);
+        }
+    }
+
+    private static Remote probe(IDownloadConfig config, String url) throws IOException {
+        URLConnection connection = open(config, url);
+        if (!(connection instanceof HttpURLConnection)) {
+            return new Remote(connection.getContentLengthLong(), false, null, null);
+        }
+
+        HttpURLConnection http = (HttpURLConnection) connection;
+        http.setRequestMethod("HEAD");
+        try {
+            if (http.getResponseCode() >= 400) {
+                throw new IOException("Unable to download " + url + " (status " + http.getResponseCode() + ")");
+            }
+            return new Remote(http.getContentLengthLong(),
+                    "bytes".equalsIgnoreCase(http.getHeaderField("Accept-Ranges")),
+                    http.getHeaderField("ETag"),
+                    http.getHeaderField("Last-Modified"));
+        } finally {
+            http.disconnect();
+        }
+    }
+
+    /**
+     * @return the published SHA-256 of the archive, or {@code null} if none
+     *         is published
+     */
+    private static String publishedChecksum(IDownloadConfig config, String url) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return fetchChecksum(config, url);
+            } catch (IOException e) {
+                if (attempt == ATTEMPTS) {
+                    throw new IOException("Unable to fetch the published SHA-256 from " + url, e);
+                }
+            }
+        }
+    }
+
+    private static String fetchChecksum(IDownloadConfig config, String url) throws IOException {
+        URLConnection connection = open(config, url);
+        int status = connection instanceof HttpURLConnection ? ((HttpURLConnection) connection).getResponseCode() : 200;
+        if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+            return null;
+        }
+        if (status >= 400) {
+            throw new IOException("Unable to download " + url + " (status " + status + ")");
+        }
+
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            copy(in, out);
+            String[] tokens = new String(out.toByteArray(), StandardCharsets.US_ASCII).trim().split("\\s+");
+            return tokens[0].isEmpty() ? null : tokens[0];
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static URLConnection open(IDownloadConfig config, String url) throws IOException {
+        Proxy proxy = config.proxyFactory().createProxy();
+        URLConnection connection = proxy != null ? new URL(url).openConnection(proxy) : new URL(url).openConnection();
+        connection.setRequestProperty("User-Agent", config.getUserAgent());
+        connection.setConnectTimeout(config.getTimeoutConfig().getConnectionTimeout());
+        connection.setReadTimeout(config.getTimeoutConfig().getReadTimeout());
+        return connection;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static final class Remote {
+
+        private final long length;
+        private final boolean acceptsRanges;
+        private final String etag;
+        private final String lastModified;
+
+        Remote(long length, boolean acceptsRanges, String etag, String lastModified) {
+            this.length = length;
+            this.acceptsRanges = acceptsRanges && length >= 0;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bson.Document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+
+/**
+ * Decides that mongod is ready by actively pinging it, backing off
+ * exponentially between attempts, rather than trusting its log output alone.
+ */
+class ReadinessProbe {
+
+    static final long INITIAL_BACKOFF_MILLIS = 10;
+    static final long MAX_BACKOFF_MILLIS = 500;
+
+    private ReadinessProbe() {
+    }
+
+    /**
+     * Pings mongod until it answers or the timeout expires.
+     *
+     * @return the number of milliseconds until the first successful ping
+     */
+    static long awaitPing(String host, int port, long timeoutMillis) throws MojoExecutionException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        MongoException lastFailure = null;
+
+        while (System.nanoTime() < deadline) {
+            MongoClientOptions options = MongoClientOptions.builder()
+                    .serverSelectionTimeout((int) backoff)
+                    .connectTimeout((int) Math.max(backoff, 100))
+                    .build();
+            MongoClient client = new MongoClient(new ServerAddress(host, port), options);
+            try {
+                client.getDatabase("admin").runCommand(new Document("ping", 1));
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            } catch (MongoException e) {
+                lastFailure = e;
+            } finally {
+                client.close();
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while waiting for mongod on port " + port, e);
+            }
+            backoff = nextBackoff(backoff);
+        }
+
+        throw new MojoExecutionException("mongod on port " + port + " did not answer a ping within " + timeoutMillis + "ms", lastFailure);
+    }
+
+    static long nextBackoff(long backoff) {
+        return Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+    }
+
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bson.Document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+
+/**
+ * Turns a set of freshly started mongod processes, all run with the same
+ * {@code --replSet} name, into a replica set with a primary.
+ */
+class ReplicaSet {
+
+    private final String name;
+    private final List<String> hosts;
+    private final boolean configServer;
+
+    /**
+     * @param hosts the members as {@code host:port}, the first one is
+     *            preferred as primary
+     */
+    ReplicaSet(String name, List<String> hosts) {
+        this(name, hosts, false);
+    }
+
+    /**
+     * @param configServer whether the members run with {@code --configsvr}
+     *            and hold a sharded cluster's metadata
+     */
+    ReplicaSet(String name, List<String> hosts, boolean configServer) {
+        this.name = name;
+        this.hosts = hosts;
+        this.configServer = configServer;
+    }
+
+    /**
+     * The replSetInitiate configuration. The first member gets a higher
+     * priority, so that even if another member wins the first election, the
+     * first member takes over and then stays primary.
+     */
+    Document config() {
+        List<Document> members = new ArrayList<Document>();
+        for (int i = 0; i < hosts.size(); i++) {
+            members.add(new Document("_id", i).append("host", hosts.get(i)).append("priority", i == 0 ? 2 : 1));
+        }
+        Document config = new Document("_id", name);
+        if (configServer) {
+            config.append("configsvr", true);
+        }
+        return config.append("members", members);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the member {@link #awaitPrimary(long)} waits to become primary,
+     *         as {@code host:port}, which clients connecting to a single
+     *         member should use
+     */
+    String getPrimary() {
+        return hosts.get(0);
+    }
+
+    /**
+     * @return the port of {@link #getPrimary()}, to be published as
+     *         <code>embedmongo.port</code>
+     */
+    int getPrimaryPort() {
+        return new ServerAddress(getPrimary()).getPort();
+    }
+
+    /**
+     * @return the set as a shard or config server address,
+     *         {@code name/host:port,...}
+     */
+    String seedList() {
+        return name + "/" + String.join(",", hosts);
+    }
+
+    String connectionString() {
+        return "mongodb://" + String.join(",", hosts) + "/?replicaSet=" + name;
+    }
+
+    void initiate() throws MojoExecutionException {
+        MongoClient client = connect(hosts.get(0), 1000);
+        try {
+            client.getDatabase("admin").runCommand(new Document("replSetInitiate", config()));
+        } catch (MongoException e) {
+            throw new MojoExecutionException("Unable to initiate replica set " + name, e);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Asks the preferred member whether it is primary, backing off between
+     * rounds, until it is or the timeout expires. Another member may win the
+     * first election, but it steps down once the preferred member catches
+     * up, so waiting for any primary would leave clients of the preferred
+     * member facing "not master" errors or a primary that is stepping down.
+     *
+     * @return the number of milliseconds until the preferred member was
+     *         primary
+     */
+    long awaitPrimary(long timeoutMillis) throws MojoExecutionException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long backoff = ReadinessProbe.INITIAL_BACKOFF_MILLIS;
+
+        while (System.nanoTime() < deadline) {
+            if (isPrimary(getPrimary())) {
+                return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while waiting for a primary in replica set " + name, e);
+            }
+            backoff = ReadinessProbe.nextBackoff(backoff);
+        }
+
+        throw new MojoExecutionException("Replica set " + name + " did not make " + getPrimary() + " primary within " + timeoutMillis + "ms");
+    }
+
+    boolean isPrimary(String host) {
+        MongoClient client = connect(host, 500);
+        try {
+            Document isMaster = client.getDatabase("admin").runCommand(new Document("isMaster", 1));
+            return Boolean.TRUE.equals(isMaster.getBoolean("ismaster"));
+        } catch (MongoException e) {
+            return false;
+        } finally {
+            client.close();
+        }
+    }
+
+    private static MongoClient connect(String host, int timeoutMillis) {
+        MongoClientOptions options = MongoClientOptions.builder()
+                .serverSelectionTimeout(timeoutMillis)
+                .connectTimeout(timeoutMillis)
+                .build();
+        return new MongoClient(new ServerAddress(host), options);
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A file run by the mongo-scripts goal, with the directives declared in the
+ * <code>//</code> comment lines at its top:
+ * <ul>
+ * <li><code>// @database name</code> runs the script against another
+ * database than the configured one</li>
+ * <li><code>// @dependsOn a.js, b.json</code> runs the script only once the
+ * named scripts of the same directory have completed</li>
+ * </ul>
+ */
+class Script {
+
+    private static final Pattern DIRECTIVE = Pattern.compile("//\\s*@(\\w+)\\s+(.*?)\\s*");
+
+    private final File file;
+    private final String database;
+    private final List<String> dependsOn;
+
+    Script(File file, String database, List<String> dependsOn) {
+        this.file = file;
+        this.database = database;
+        this.dependsOn = dependsOn;
+    }
+
+    /**
+     * Reads the directives from the comment lines at the top of the file.
+     */
+    static Script read(File file, Charset charset) throws IOException {
+        String database = null;
+        List<String> dependsOn = new ArrayList<String>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), charset)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.replace("\uFEFF", "").trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (!line.startsWith("//")) {
+                    break;
+                }
+
+                Matcher directive = DIRECTIVE.matcher(line);
+                if (!directive.matches()) {
+                    continue;
+                }
+                if (directive.group(1).equals("database")) {
+                    database = directive.group(2);
+                } else if (directive.group(1).equals("dependsOn")) {
+                    for (String name : directive.group(2).split("\\s*,\\s*")) {
+                        if (!name.isEmpty()) {
+                            dependsOn.add(name);
+                        }
+                    }
+                }
+            }
+        }
+
+        return new Script(file, database, Collections.unmodifiableList(dependsOn));
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    String getName() {
+        return file.getName();
+    }
+
+    /**
+     * @return the database declared by the script, or {@code null} to use
+     *         the configured one
+     */
+    String getDatabase() {
+        return database;
+    }
+
+    List<String> getDependsOn() {
+        return dependsOn;
+    }
+
+    /**
+     * @return {@code true} for a script of database command documents rather
+     *         than JavaScript
+     */
+    boolean isCommandScript() {
+        return file.getName().endsWith(".json");
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+}
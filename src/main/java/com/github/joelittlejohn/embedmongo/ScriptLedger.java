@@ -0,0 +1,137 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+
+/**
+ * Records in a collection which scripts have been applied to a database, and
+ * the checksum of their content at the time, so that against a data
+ * directory kept between builds only new scripts are run. Scripts changed
+ * since they were applied are handled according to a {@link ChangePolicy}.
+ */
+class ScriptLedger {
+
+    /**
+     * What to do with a script whose content changed since it was applied.
+     */
+    enum ChangePolicy {
+        /** Fail the build before running any script. */
+        FAIL,
+        /** Run the script again. */
+        RERUN,
+        /** Log a warning and leave the script out. */
+        WARN
+    }
+
+    private final MongoCollection<Document> collection;
+    private final Map<String, String> applied;
+    private final Map<String, String> checksums = new HashMap<String, String>();
+
+    ScriptLedger(MongoCollection<Document> collection, Map<String, String> applied) {
+        this.collection = collection;
+        this.applied = applied;
+    }
+
+    /**
+     * Reads which scripts have already been applied from the given
+     * collection.
+     */
+    static ScriptLedger load(MongoCollection<Document> collection) {
+        Map<String, String> applied = new HashMap<String, String>();
+        for (Document entry : collection.find()) {
+            applied.put(entry.getString("_id"), entry.getString("checksum"));
+        }
+        return new ScriptLedger(collection, applied);
+    }
+
+    /**
+     * @return the scripts that need to run: those never applied, and those
+     *         changed since they were applied when the policy is
+     *         {@link ChangePolicy#RERUN}
+     * @throws MojoFailureException if a script changed and the policy is
+     *             {@link ChangePolicy#FAIL}
+     */
+    Set<Script> pending(List<Script> scripts, ChangePolicy policy, Log log) throws IOException, MojoFailureException {
+        Set<Script> pending = new LinkedHashSet<Script>();
+        for (Script script : scripts) {
+            String checksum = checksum(script.getFile());
+            checksums.put(script.getName(), checksum);
+
+            String appliedChecksum = applied.get(script.getName());
+            if (appliedChecksum == null) {
+                pending.add(script);
+            } else if (!appliedChecksum.equals(checksum)) {
+                switch (policy) {
+                    case FAIL:
+                        throw new MojoFailureException("Script '" + script.getName() + "' changed since it was applied, "
+                                + "restore it, add the change as a new script or set changedScriptPolicy to rerun or warn");
+                    case RERUN:
+                        log.info("- file " + script.getName() + " changed since it was applied, running it again");
+                        pending.add(script);
+                        break;
+                    case WARN:
+                        log.warn("- file " + script.getName() + " changed since it was applied, leaving it out");
+                        break;
+                }
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Records a script as applied with the checksum it was found to have by
+     * {@link #pending}.
+     */
+    void record(Script script) {
+        String checksum = checksums.get(script.getName());
+        collection.updateOne(Filters.eq("_id", script.getName()),
+                Updates.combine(Updates.set("checksum", checksum), Updates.set("appliedAt", new Date())),
+                new UpdateOptions().upsert(true));
+    }
+
+    static String checksum(File file) throws IOException {
+        MessageDigest digest = FileUtils.sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return FileUtils.hex(digest.digest());
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads script files through a {@link FileChannel}, decoding them with one
+ * {@link CharsetDecoder} per thread that is reset and reused for every file
+ * rather than created for each line. Files of at least
+ * {@link #MAP_THRESHOLD} bytes are memory-mapped instead of copied onto the
+ * heap before decoding.
+ */
+class ScriptLoader {
+
+    static final int MAP_THRESHOLD = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Charset charset;
+    private final ThreadLocal<CharsetDecoder> decoders;
+
+    ScriptLoader(Charset charset) {
+        this.charset = charset;
+        this.decoders = ThreadLocal.withInitial(() -> charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT));
+    }
+
+    /**
+     * Loads a whole script, e.g. JavaScript that has to be sent to the
+     * server in one piece. The text always ends with a line break, so that a
+     * trailing line comment cannot swallow code appended after it.
+     */
+    String load(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Script '" + file.getName() + "' is too large to load at once (" + size + " bytes)");
+            }
+
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) != -1) {
+                    // keep reading until the buffer is full
+                }
+                bytes.flip();
+            }
+
+            CharBuffer text;
+            try {
+                text = decoders.get().decode(bytes);
+            } catch (CharacterCodingException e) {
+                throw new IOException("Script '" + file.getName() + "' is not valid " + charset.name(), e);
+            }
+
+            StringBuilder script = new StringBuilder(text.remaining() + 1).append(text);
+            if (script.length() == 0 || script.charAt(script.length() - 1) != '\n') {
+                script.append('\n');
+            }
+            return script.toString();
+        }
+    }
+
+    /**
+     * Opens a script of command documents, to be streamed to the server one
+     * document at a time.
+     */
+    JsonDocumentReader open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        CharsetDecoder decoder = decoders.get();
+        decoder.reset();
+        return new JsonDocumentReader(new BufferedReader(Channels.newReader(channel, decoder, BUFFER_SIZE), BUFFER_SIZE));
+    }
+
+}
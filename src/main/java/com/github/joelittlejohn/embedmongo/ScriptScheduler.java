@@ -0,0 +1,195 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Runs scripts in name order, or concurrently on a fixed number of worker
+ * threads where the grouping allows it. A script only starts once every
+ * script it depends on has completed, and the first failure cancels every
+ * script still queued or running.
+ */
+class ScriptScheduler {
+
+    /**
+     * How scripts may be run concurrently.
+     */
+    enum Grouping {
+        /** One after another, in name order. */
+        NONE,
+        /** Scripts for different databases concurrently, those for the same database in name order. */
+        DATABASE,
+        /** Concurrently, except where a script declares it depends on another. */
+        DEPENDENCIES
+    }
+
+    /**
+     * A single script, run on one of the scheduler's worker threads. Tasks
+     * should stop promptly when interrupted.
+     */
+    interface ScriptTask {
+        void run(Script script) throws Exception;
+    }
+
+    private final Grouping grouping;
+    private final int concurrency;
+    private final String defaultDatabase;
+
+    ScriptScheduler(Grouping grouping, int concurrency, String defaultDatabase) {
+        this.grouping = grouping;
+        this.concurrency = grouping == Grouping.NONE ? 1 : concurrency > 0 ? concurrency : Runtime.getRuntime().availableProcessors();
+        this.defaultDatabase = defaultDatabase;
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    void runAll(List<Script> scripts, ScriptTask task) throws MojoExecutionException, MojoFailureException, InterruptedException {
+        if (scripts.isEmpty()) {
+            return;
+        }
+
+        Map<Script, List<Script>> dependents = dependents(scripts);
+        Map<Script, Integer> pendingDependencies = new HashMap<Script, Integer>();
+        for (Script script : scripts) {
+            pendingDependencies.putIfAbsent(script, 0);
+            for (Script dependent : dependents.get(script)) {
+                pendingDependencies.merge(dependent, 1, Integer::sum);
+            }
+        }
+        checkAcyclic(scripts, dependents, pendingDependencies);
+
+        PriorityQueue<Script> ready = new PriorityQueue<Script>(Comparator.comparing(Script::getName));
+        for (Script script : scripts) {
+            if (pendingDependencies.get(script) == 0) {
+                ready.add(script);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, scripts.size()), new DaemonThreadFactory("embedmongo-script"));
+        CompletionService<Script> completionService = new ExecutorCompletionService<Script>(executor);
+        List<Future<Script>> pending = new ArrayList<Future<Script>>();
+
+        try {
+            int running = 0;
+            for (int completed = 0; completed < scripts.size(); completed++) {
+                while (!ready.isEmpty() && running < concurrency) {
+                    final Script script = ready.poll();
+                    pending.add(completionService.submit(() -> {
+                        task.run(script);
+                        return script;
+                    }));
+                    running++;
+                }
+
+                Script done;
+                try {
+                    done = completionService.take().get();
+                } catch (ExecutionException e) {
+                    throw ExecutionFailures.unwrap(e);
+                }
+                running--;
+
+                for (Script dependent : dependents.get(done)) {
+                    if (pendingDependencies.merge(dependent, -1, Integer::sum) == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            for (Future<Script> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @return for each script, the scripts that may only start once it has
+     *         completed
+     */
+    Map<Script, List<Script>> dependents(List<Script> scripts) throws MojoFailureException {
+        Map<String, Script> byName = new LinkedHashMap<String, Script>();
+        Map<Script, List<Script>> dependents = new LinkedHashMap<Script, List<Script>>();
+        for (Script script : scripts) {
+            byName.put(script.getName(), script);
+            dependents.put(script, new ArrayList<Script>());
+        }
+
+        for (Script script : scripts) {
+            for (String name : script.getDependsOn()) {
+                Script dependency = byName.get(name);
+                if (dependency == null) {
+                    throw new MojoFailureException("Script '" + script.getName() + "' depends on '" + name + "', which is not in the scripts directory");
+                }
+                dependents.get(dependency).add(script);
+            }
+        }
+
+        if (grouping == Grouping.DATABASE) {
+            Map<String, Script> lastByDatabase = new HashMap<String, Script>();
+            scripts.stream().sorted(Comparator.comparing(Script::getName)).forEach(script -> {
+                String database = script.getDatabase() != null ? script.getDatabase() : defaultDatabase;
+                Script previous = lastByDatabase.put(database, script);
+                if (previous != null) {
+                    dependents.get(previous).add(script);
+                }
+            });
+        }
+        return dependents;
+    }
+
+    private static void checkAcyclic(List<Script> scripts, Map<Script, List<Script>> dependents, Map<Script, Integer> pendingDependencies) throws MojoFailureException {
+        Map<Script, Integer> remaining = new HashMap<Script, Integer>(pendingDependencies);
+        List<Script> ordered = new ArrayList<Script>();
+        for (Script script : scripts) {
+            if (remaining.get(script) == 0) {
+                ordered.add(script);
+            }
+        }
+        for (int i = 0; i < ordered.size(); i++) {
+            for (Script dependent : dependents.get(ordered.get(i))) {
+                if (remaining.merge(dependent, -1, Integer::sum) == 0) {
+                    ordered.add(dependent);
+                }
+            }
+        }
+
+        if (ordered.size() < scripts.size()) {
+            List<Script> cycle = new ArrayList<Script>(scripts);
+            cycle.removeAll(ordered);
+            throw new MojoFailureException("Scripts " + cycle + " have circular dependencies");
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.bson.Document;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * Configures a freshly started sharded cluster through its mongos: adds the
+ * shards and shards the configured collections.
+ */
+class ShardedCluster {
+
+    /** Chunks created up front per shard, for hashed shard keys or by pre-splitting. */
+    static final int INITIAL_CHUNKS_PER_SHARD = 2;
+
+    private final String mongos;
+    private final Log log;
+
+    /**
+     * @param mongos the mongos as {@code host:port}
+     */
+    ShardedCluster(String mongos, Log log) {
+        this.mongos = mongos;
+        this.log = log;
+    }
+
+    /**
+     * @param shards the shards as {@code replicaSet/host:port}
+     */
+    void configure(List<String> shards, ShardedCollectionConfig[] collections) throws MojoExecutionException {
+        MongoClient client = new MongoClient(new ServerAddress(mongos), MongoClientOptions.builder().serverSelectionTimeout(5000).build());
+        try {
+            MongoDatabase admin = client.getDatabase("admin");
+            for (String shard : shards) {
+                admin.runCommand(new Document("addShard", shard));
+            }
+
+            if (collections == null) {
+                return;
+            }
+
+            Set<String> databases = new LinkedHashSet<String>();
+            for (ShardedCollectionConfig collection : collections) {
+                if (databases.add(collection.getDatabase())) {
+                    admin.runCommand(new Document("enableSharding", collection.getDatabase()));
+                }
+                admin.runCommand(shardCollectionCommand(collection, shards.size()));
+                log.info("Sharded " + collection.getNamespace() + " on " + collection.getKey() + (collection.getHashed() ? " (hashed)" : ""));
+            }
+        } catch (MongoException e) {
+            throw new MojoExecutionException("Unable to configure sharded cluster: " + e.getMessage(), e);
+        } finally {
+            client.close();
+        }
+    }
+
+    static Document shardCollectionCommand(ShardedCollectionConfig collection, int shards) {
+        Document command = new Document("shardCollection", collection.getNamespace());
+        if (collection.getHashed()) {
+            command.append("key", new Document(collection.getKey(), "hashed"))
+                    .append("numInitialChunks", shards * INITIAL_CHUNKS_PER_SHARD);
+        } else {
+            command.append("key", new Document(collection.getKey(), 1));
+        }
+        return command;
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+public class ShardedCollectionConfig {
+
+    private String database;
+    private String collection;
+    private String key;
+    private Boolean hashed = false;
+
+    public ShardedCollectionConfig() {
+    }
+
+    public ShardedCollectionConfig(String database, String collection, String key, Boolean hashed) {
+        this.database = database;
+        this.collection = collection;
+        this.key = key;
+        this.hashed = hashed;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Boolean getHashed() {
+        return hashed;
+    }
+
+    public String getNamespace() {
+        return database + "." + collection;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedCollectionConfig{" +
+                "database='" + database + '\'' +
+                ", collection='" + collection + '\'' +
+                ", key='" + key + '\'' +
+                ", hashed=" + hashed +
+                '}';
+    }
+}
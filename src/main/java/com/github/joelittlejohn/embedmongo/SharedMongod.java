@@ -0,0 +1,156 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import de.flapdoodle.embed.mongo.MongodProcess;
+
+/**
+ * Reference counted mongod processes shared by every module of a reactor
+ * build. Maven loads a plugin once per build, so this registry is visible to
+ * all modules that use the same version of the plugin.
+ */
+final class SharedMongod {
+
+    interface Starter {
+        MongodProcess start() throws MojoExecutionException, MojoFailureException;
+    }
+
+    private static final Map<String, SharedMongod> INSTANCES = new HashMap<String, SharedMongod>();
+
+    private final MongodProcess process;
+    private int references;
+    private File temporaryDirectory;
+    private Map<String, String> settings = Collections.emptyMap();
+    private final List<PortAllocator.Lease> portLeases = Collections.synchronizedList(new ArrayList<PortAllocator.Lease>());
+
+    private SharedMongod(MongodProcess process) {
+        this.process = process;
+    }
+
+    MongodProcess getProcess() {
+        return process;
+    }
+
+    int getPort() {
+        return process.getConfig().net().getPort();
+    }
+
+    int getReferences() {
+        return references;
+    }
+
+    /**
+     * @return the temporary data directory created for this instance, to be
+     *         deleted once the instance is stopped, or {@code null}
+     */
+    File getTemporaryDirectory() {
+        return temporaryDirectory;
+    }
+
+    void setTemporaryDirectory(File temporaryDirectory) {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+
+    /**
+     * @return the parameters of the execution that started this instance,
+     *         that another execution must resolve to the same values to
+     *         reuse it
+     */
+    Map<String, String> getSettings() {
+        return settings;
+    }
+
+    void setSettings(Map<String, String> settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * @return the parameters of the running instance for the given
+     *         configuration key, or an empty map if there is none
+     */
+    static synchronized Map<String, String> settings(String key) {
+        SharedMongod instance = INSTANCES.get(key);
+        return instance == null ? Collections.<String, String>emptyMap() : instance.settings;
+    }
+
+    /**
+     * @return the port leases taken by the module that started this
+     *         instance, to be released once the instance is stopped
+     */
+    List<PortAllocator.Lease> getPortLeases() {
+        return portLeases;
+    }
+
+    /**
+     * Moves the given port leases to this instance, so they outlive the
+     * module that took them.
+     */
+    void takePortLeases(List<PortAllocator.Lease> leases) {
+        synchronized (leases) {
+            portLeases.addAll(leases);
+            leases.clear();
+        }
+    }
+
+    /**
+     * Returns the running instance for the given configuration key, starting
+     * one if there is none yet, and adds a reference to it.
+     */
+    static synchronized SharedMongod acquire(String key, Starter starter) throws MojoExecutionException, MojoFailureException {
+        SharedMongod instance = INSTANCES.get(key);
+
+        if (instance == null || !instance.process.isProcessRunning()) {
+            instance = new SharedMongod(starter.start());
+            INSTANCES.put(key, instance);
+        }
+
+        instance.references++;
+        return instance;
+    }
+
+    /**
+     * Removes a reference to the instance for the given configuration key.
+     *
+     * @param keepAlive whether the instance should be left running for
+     *            modules that have not acquired it yet
+     * @return the instance if no references remain and the caller should
+     *         stop it, otherwise {@code null}
+     */
+    static synchronized SharedMongod release(String key, boolean keepAlive) {
+        SharedMongod instance = INSTANCES.get(key);
+        if (instance == null) {
+            return null;
+        }
+
+        instance.references = Math.max(0, instance.references - 1);
+        if (instance.references == 0 && !keepAlive) {
+            INSTANCES.remove(key);
+            return instance;
+        }
+        return null;
+    }
+
+}
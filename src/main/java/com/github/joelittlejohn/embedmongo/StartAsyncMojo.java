@@ -0,0 +1,63 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * When invoked, this goal begins downloading, extracting and starting mongo
+ * in a background thread and returns immediately, so that startup overlaps
+ * with the rest of the build. Use the <code>await</code> goal to wait for
+ * mongo to be ready before it is needed. Takes the same configuration as the
+ * <code>start</code> goal.
+ */
+@Mojo(name="start-async", defaultPhase = LifecyclePhase.INITIALIZE)
+public class StartAsyncMojo extends StartMojo {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void executeStart() throws MojoExecutionException, MojoFailureException {
+        ExecutorService executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("embedmongo-start"));
+
+        try {
+            Future<Void> startup = executor.submit(() -> {
+                super.executeStart();
+                return null;
+            });
+            getPluginContext().put(ASYNC_START_CONTEXT_PROPERTY_NAME, startup);
+        } finally {
+            executor.shutdown();
+        }
+
+        getLog().info("Starting mongod in the background");
+    }
+
+    /**
+     * Blocking until mongod is stopped makes no sense for a background start.
+     */
+    @Override
+    public boolean isWait() {
+        return false;
+    }
+
+}
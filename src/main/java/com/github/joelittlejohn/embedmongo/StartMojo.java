@@ -17,11 +17,22 @@ package com.github.joelittlejohn.embedmongo;
 
 import static org.apache.commons.lang3.StringUtils.*;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.maven.plugin.MojoExecutionException;
@@ -34,19 +45,26 @@ import org.apache.maven.settings.Settings;
 
 import com.github.joelittlejohn.embedmongo.log.Loggers;
 import com.github.joelittlejohn.embedmongo.log.Loggers.LoggingStyle;
+import com.mongodb.ServerAddress;
 
 import de.flapdoodle.embed.mongo.Command;
 import de.flapdoodle.embed.mongo.MongodExecutable;
 import de.flapdoodle.embed.mongo.MongodProcess;
 import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.MongosProcess;
+import de.flapdoodle.embed.mongo.MongosStarter;
 import de.flapdoodle.embed.mongo.config.ExtractedArtifactStoreBuilder;
 import de.flapdoodle.embed.mongo.config.DownloadConfigBuilder;
+import de.flapdoodle.embed.mongo.config.IMongoCmdOptions;
 import de.flapdoodle.embed.mongo.config.IMongodConfig;
 import de.flapdoodle.embed.mongo.config.MongoCmdOptionsBuilder;
 import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.MongosConfigBuilder;
 import de.flapdoodle.embed.mongo.config.Net;
 import de.flapdoodle.embed.mongo.config.RuntimeConfigBuilder;
 import de.flapdoodle.embed.mongo.config.Storage;
+import de.flapdoodle.embed.mongo.distribution.Feature;
+import de.flapdoodle.embed.mongo.runtime.Mongod;
 import de.flapdoodle.embed.process.config.IRuntimeConfig;
 import de.flapdoodle.embed.process.config.io.ProcessOutput;
 import de.flapdoodle.embed.process.config.store.HttpProxyFactory;
@@ -55,6 +73,7 @@ import de.flapdoodle.embed.process.config.store.IProxyFactory;
 import de.flapdoodle.embed.process.config.store.NoProxyFactory;
 import de.flapdoodle.embed.process.distribution.Distribution;
 import de.flapdoodle.embed.process.exceptions.DistributionException;
+import de.flapdoodle.embed.process.extract.IExtractedFileSet;
 import de.flapdoodle.embed.process.runtime.ICommandLinePostProcessor;
 import de.flapdoodle.embed.process.store.IArtifactStore;
 
@@ -70,6 +89,17 @@ public class StartMojo extends AbstractEmbeddedMongoMojo {
 
     private static final String PACKAGE_NAME = StartMojo.class.getPackage().getName();
     public static final String MONGOD_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".mongod";
+    public static final String DATA_CACHE_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".dataCache";
+    public static final String TEMP_DATA_DIRECTORY_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".tempDataDirectory";
+    public static final String SHARED_MONGOD_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".sharedMongod";
+    public static final String MONGOD_POOL_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".mongodPool";
+    public static final String ASYNC_START_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".asyncStart";
+    public static final String PORT_LEASES_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".portLeases";
+    public static final String MONGOS_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".mongos";
+    public static final String DAEMON_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".daemon";
+    public static final String CLIENT_REGISTRY_CONTEXT_PROPERTY_NAME = PACKAGE_NAME + ".clients";
+
+    private static final int PORT_ATTEMPTS = 3;
 
     @Override
     protected void savePortToProjectProperties(int port) {
@@ -143,6 +173,280 @@ public class StartMojo extends AbstractEmbeddedMongoMojo {
     @Parameter(property = "embedmongo.storageEngine", defaultValue = "mmapv1")
     private String storageEngine;
 
+    /**
+     * Cache the data directory once mongo-import and mongo-scripts have
+     * seeded it, keyed by a fingerprint of the MongoDB version, storage
+     * engine, import files and scripts. When the fingerprint matches a
+     * cached snapshot, the snapshot is restored and the seeding goals are
+     * skipped.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.dataCache", defaultValue = "false")
+    private boolean dataCache;
+
+    /**
+     * The directory holding cached data directory snapshots.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.dataCacheDirectory", defaultValue = "${user.home}/.embedmongo/data-cache")
+    private File dataCacheDirectory;
+
+    /**
+     * A range of ports such as {@code 27100-27199} to pick from when
+     * {@code randomPort} is set. Ports are leased through lock files shared by
+     * all builds on the host, so concurrent builds never pick the same one.
+     * Without a range, the operating system suggests the ports.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.portRange")
+    private String portRange;
+
+    /**
+     * The directory holding the port lease files shared by all builds on the
+     * host.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.portLeaseDirectory", defaultValue = "${java.io.tmpdir}/embedmongo-ports")
+    private File portLeaseDirectory;
+
+    /**
+     * Share a single mongod between all modules of a reactor build. The
+     * first module to run the start goal launches mongod, later modules with
+     * the same configuration reuse it, and it is stopped once the last module
+     * that uses it has run the stop goal.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.shared", defaultValue = "false")
+    private boolean shared;
+
+    /**
+     * Publish a database name derived from the module's artifactId as the
+     * {@code embedmongo.databaseName} project property, so modules sharing a
+     * mongod can keep their data apart.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.databasePerModule", defaultValue = "false")
+    private boolean databasePerModule;
+
+    /**
+     * The number of mongod instances to start, each on its own port. With
+     * more than one instance the ports are published as
+     * {@code embedmongo.port.0} to {@code embedmongo.port.N-1} and as the
+     * comma-separated {@code embedmongo.ports} property, so that parallel
+     * test forks can each pick their own instance. {@code embedmongo.port}
+     * refers to the first instance.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.instances", defaultValue = "1")
+    private int instances;
+
+    /**
+     * The name of a replica set to start instead of a standalone mongod. The
+     * members are started in parallel, the set is initiated and the start
+     * goal waits until a primary has been elected. Members always journal,
+     * and the connection string is published as
+     * {@code embedmongo.connectionString}.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.replicaSet")
+    private String replicaSet;
+
+    /**
+     * The number of members to start when {@code replicaSet} is set. A single
+     * member is enough for change streams and transactions and is the
+     * fastest to start.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.replicaSetMembers", defaultValue = "1")
+    private int replicaSetMembers;
+
+    /**
+     * The number of shards of a sharded cluster to start instead of a
+     * standalone mongod. The config server and the shards, each a single
+     * member replica set, are started in parallel, then a mongos whose port
+     * is published as {@code embedmongo.port} and whose connection string is
+     * published as {@code embedmongo.connectionString}.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.shards", defaultValue = "0")
+    private int shards;
+
+    /**
+     * The collections to shard once a sharded cluster has started.
+     *
+     * @since 0.4.3
+     */
+    @Parameter
+    private ShardedCollectionConfig[] shardedCollections;
+
+    /**
+     * The number of byte ranges of the MongoDB archive to download in
+     * parallel, when the server supports range requests.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.downloadConnections", defaultValue = "4")
+    private int downloadConnections;
+
+    /**
+     * Keep extracted MongoDB binaries in a machine-wide cache shared by all
+     * builds, and link them into each execution instead of unpacking the
+     * archive again.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.binaryCache", defaultValue = "false")
+    private boolean binaryCache;
+
+    /**
+     * The directory holding cached MongoDB binaries.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.binaryCacheDirectory", defaultValue = "${user.home}/.embedmongo/binaries")
+    private File binaryCacheDirectory;
+
+    /**
+     * The size in megabytes above which the least recently used versions are
+     * evicted from the binary cache.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.binaryCacheSize", defaultValue = "1024")
+    private long binaryCacheSize;
+
+    /**
+     * Run mongod without durability: keep the data files on a tmpfs such as
+     * {@code /dev/shm} when one is available, use the
+     * {@code ephemeralForTest} storage engine when the version has it, and
+     * turn off journaling and the periodic flush to disk. Falls back to the
+     * regular temporary directory and configured storage engine otherwise.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.ephemeral", defaultValue = "false")
+    private boolean ephemeral;
+
+    /**
+     * How long to keep pinging a freshly started mongod before giving up, in
+     * milliseconds.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.readinessTimeout", defaultValue = "30000")
+    private int readinessTimeout;
+
+    /**
+     * Where to write a JSON report of how long the download, extraction,
+     * process spawn and first successful ping took.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.startupReport", defaultValue = "${project.build.directory}/embedmongo-startup.json")
+    private File startupReport;
+
+    /**
+     * Read the CPU and memory limits of the container (cgroup v1 or v2) the
+     * build runs in and size mongod to fit: the WiredTiger cache is set to a
+     * quarter of the memory limit, split between {@code instances}, instead
+     * of being sized from the host's RAM.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.autoTune", defaultValue = "false")
+    private boolean autoTune;
+
+    /**
+     * A named set of mongod options: {@code fastest-test} (no journal, no
+     * flush, no compression), {@code durable} (journal on, default flush
+     * interval), {@code low-memory} (smallest cache and oplog) or
+     * {@code no-table-scan} (fail unindexed queries). Options the selected
+     * version or storage engine does not support are left out. The
+     * profile's journal setting takes precedence over {@code journal}.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.profile")
+    private String profile;
+
+    /**
+     * Leave mongod running after the build as a daemon, and attach to it
+     * instead of starting a new one in later builds with the same
+     * configuration. Seeding goals are skipped while the daemon holds the
+     * data they loaded last time, so tests must not depend on changes made
+     * by earlier runs. Stop the daemon with the stop-daemon goal. Not
+     * supported on Windows.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.daemon", defaultValue = "false")
+    private boolean daemon;
+
+    /**
+     * The directory holding the state files, logs and data of mongod
+     * daemons.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.daemonDirectory", defaultValue = "${user.home}/.embedmongo/daemons")
+    private File daemonDirectory;
+
+    /**
+     * The maximum number of connections per server of the MongoDB client
+     * shared by the goals of this plugin, such as mongo-import and
+     * mongo-scripts.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.clientPoolSize", defaultValue = "100")
+    private int clientPoolSize;
+
+    /**
+     * How long the shared MongoDB client waits for a connection to open, in
+     * milliseconds.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.clientConnectTimeout", defaultValue = "10000")
+    private int clientConnectTimeout;
+
+    /**
+     * The wire protocol compressors the shared MongoDB client may use, in
+     * order of preference, e.g. {@code zlib} or {@code snappy,zlib}. Snappy
+     * needs {@code org.xerial.snappy:snappy-java} added as a plugin
+     * dependency. Messages are not compressed by default.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.clientCompressors")
+    private String clientCompressors;
+
+    private StartupReport timings;
+
+    private String activeStorageEngine;
+
+    private String wiredTigerCacheSizeGB;
+
+    private MongodProfile mongodProfile;
+
+    private List<String> profileArgs = Collections.emptyList();
+
+    private static final int REPLICA_SET_OPLOG_SIZE_MB = 64;
+
+    private static final String CONFIG_REPLICA_SET = "configRS";
+
+    private final List<PortAllocator.Lease> leases = Collections.synchronizedList(new ArrayList<PortAllocator.Lease>());
+
     @Parameter( defaultValue = "${settings}", readonly = true )
     protected Settings settings;
 
@@ -154,11 +458,492 @@ public class StartMojo extends AbstractEmbeddedMongoMojo {
     @Override
     @SuppressWarnings("unchecked")
     public void executeStart() throws MojoExecutionException, MojoFailureException {
+        if (ephemeral && dataCache) {
+            throw new MojoFailureException("ephemeral cannot be combined with dataCache");
+        }
+        if (daemon && (replicaSet != null || instances > 1 || shards > 0)) {
+            throw new MojoFailureException("daemon cannot be combined with replicaSet, instances > 1 or shards");
+        }
+
+        String version = getVersion().asInDownloadPath();
+        activeStorageEngine = ephemeral && replicaSet == null && shards == 0 ? EphemeralStorage.storageEngine(version, storageEngine) : storageEngine;
+        timings = new StartupReport(version, activeStorageEngine);
+        if (autoTune) {
+            autoTune(version);
+        }
+        if (profile != null) {
+            applyProfile(version);
+        }
+        getPluginContext().put(PORT_LEASES_CONTEXT_PROPERTY_NAME, leases);
+        try {
+            getPluginContext().put(CLIENT_REGISTRY_CONTEXT_PROPERTY_NAME,
+                    new MongoClientRegistry(MongoClientRegistry.options(clientPoolSize, clientConnectTimeout, clientCompressors)));
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException(e.getMessage());
+        }
+
+        MongodProcess mongod;
+        if (shards > 0) {
+            List<MongodProcess> pool = startShardedCluster();
+            getPluginContext().put(MONGOD_POOL_CONTEXT_PROPERTY_NAME, pool);
+            mongod = pool.get(0);
+        } else if (replicaSet != null || instances > 1) {
+            List<MongodProcess> pool = startMongodPool();
+            getPluginContext().put(MONGOD_POOL_CONTEXT_PROPERTY_NAME, pool);
+            if (replicaSet != null) {
+                initiateReplicaSet(pool);
+            }
+            mongod = pool.get(0);
+        } else if (daemon) {
+            startOrAttachDaemon();
+            mongod = null;
+        } else {
+            mongod = shared ? acquireSharedMongod() : startMongod();
+        }
+
+        if (timings.hasInstances()) {
+            writeStartupReport();
+        }
+
+        if (databasePerModule) {
+            String databaseName = project.getArtifactId().replaceAll("[/\\\\. \"$*<>:|?]", "_");
+            project.getProperties().put("embedmongo.databaseName", databaseName);
+            getLog().info("Using database name " + databaseName + " for this module");
+        }
+
+        if (isWait()) {
+            while (true) {
+                try {
+                    TimeUnit.MINUTES.sleep(5);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+
+        if (mongod != null) {
+            // a daemon is not ours to stop, so there is no process to hand over
+            getPluginContext().put(MONGOD_CONTEXT_PROPERTY_NAME, mongod);
+        }
+    }
+
+    /**
+     * @return everything that would make a running mongod unsuitable for
+     *         this execution if it differed
+     */
+    private String getConfigurationKey() {
+        return getVersion().asInDownloadPath() + "|" + getFeatures() + "|" + bindIp + "|" + (isRandomPort() ? "random" : getPort())
+                + "|" + activeStorageEngine + "|" + wiredTigerCacheSizeGB + "|" + profile + "|" + authEnabled + "|" + journal + "|" + ephemeral + "|" + databaseDirectory;
+    }
+
+    /**
+     * @return the parameters another module's start execution must resolve
+     *         to for it to reuse the shared mongod started by this one, see
+     *         {@link StopMojo}
+     */
+    Map<String, String> getSharedSettings() {
+        Map<String, String> settings = new HashMap<String, String>();
+        settings.put("version", getVersion().asInDownloadPath());
+        settings.put("features", getFeatures());
+        settings.put("bindIp", bindIp);
+        settings.put("port", isRandomPort() ? "random" : String.valueOf(getPort()));
+        settings.put("storageEngine", storageEngine);
+        settings.put("autoTune", String.valueOf(autoTune));
+        settings.put("profile", profile);
+        settings.put("authEnabled", String.valueOf(authEnabled));
+        settings.put("journal", String.valueOf(journal));
+        settings.put("ephemeral", String.valueOf(ephemeral));
+        settings.put("databaseDirectory", databaseDirectory != null ? databaseDirectory.getAbsolutePath() : null);
+        return settings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private MongodProcess acquireSharedMongod() throws MojoExecutionException, MojoFailureException {
+        String key = getConfigurationKey();
+
+        SharedMongod instance = SharedMongod.acquire(key, this::startMongod);
+        if (instance.getSettings().isEmpty()) {
+            instance.setSettings(getSharedSettings());
+        }
+        File temporaryDirectory = (File) getPluginContext().remove(TEMP_DATA_DIRECTORY_CONTEXT_PROPERTY_NAME);
+        if (temporaryDirectory != null) {
+            instance.setTemporaryDirectory(temporaryDirectory);
+        }
+        instance.takePortLeases(leases);
+        savePortToProjectProperties(instance.getPort());
+        getPluginContext().put(SHARED_MONGOD_CONTEXT_PROPERTY_NAME, key);
+
+        getLog().info("Using shared mongod on port " + instance.getPort() + " (" + instance.getReferences() + " active module(s))");
+        return instance.getProcess();
+    }
+
+    private MongodProcess startMongod() throws MojoExecutionException, MojoFailureException {
+        String dataDirectory;
+        try {
+            dataDirectory = dataCache ? prepareDataCache() : getDatabaseDirectory().getAbsolutePath();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to Config MongoDB: ", e);
+        }
+
+        int port = isRandomPort() ? reservePort() : getPort();
+        MongodProcess mongod = startWithRetry(prepareMongod(port, dataDirectory), port, dataDirectory);
+        savePortToProjectProperties(mongod.getConfig().net().getPort());
+        return mongod;
+    }
+
+    /**
+     * Starts {@link #instances} mongod processes, or the members of
+     * {@link #replicaSet}, in parallel. The executables
+     * are prepared one after another so the distribution is downloaded and
+     * extracted only once, then all of them are started at the same time.
+     */
+    private List<MongodProcess> startMongodPool() throws MojoExecutionException, MojoFailureException {
+        if (shared || dataCache) {
+            throw new MojoFailureException((replicaSet != null ? "replicaSet" : "instances > 1") + " cannot be combined with shared or dataCache");
+        }
+
+        int instances = getPoolSize();
+        File root = getPoolDirectory();
+
+        List<Integer> ports = new ArrayList<Integer>();
+        List<String> dataDirectories = new ArrayList<String>();
+        for (int i = 0; i < instances; i++) {
+            ports.add(isRandomPort() ? reservePort() : getPort() + i);
+            dataDirectories.add(new File(root, "instance-" + i).getAbsolutePath());
+        }
+
+        List<MongodProcess> pool = startAll(ports, dataDirectories, Collections.nCopies(instances, defaultRole()));
+
+        ports.clear();
+        for (MongodProcess mongod : pool) {
+            ports.add(mongod.getConfig().net().getPort());
+        }
+
+        savePortToProjectProperties(ports.get(0));
+        for (int i = 0; i < ports.size(); i++) {
+            project.getProperties().put("embedmongo.port." + i, String.valueOf(ports.get(i)));
+        }
+        project.getProperties().put("embedmongo.ports", join(ports, ","));
+        getLog().info("Started " + instances + " mongod instances on ports " + join(ports, ","));
+        return pool;
+    }
+
+    /**
+     * Starts a sharded cluster: a config server and {@link #shards} shards,
+     * each a single member replica set, all in parallel, then a mongos in
+     * front of them once their primaries have been elected.
+     */
+    private List<MongodProcess> startShardedCluster() throws MojoExecutionException, MojoFailureException {
+        if (shared || dataCache || replicaSet != null || instances > 1) {
+            throw new MojoFailureException("shards cannot be combined with shared, dataCache, replicaSet or instances > 1");
+        }
+
+        File root = getPoolDirectory();
+        // config servers are a replica set since 3.4, a standalone --configsvr before
+        boolean configReplicaSet = getVersion().enabled(Feature.MONGOS_CONFIGDB_SET_STYLE);
+        int mongosPort = isRandomPort() ? reservePort() : getPort();
+
+        List<MemberRole> roles = new ArrayList<MemberRole>();
+        roles.add(new MemberRole(configReplicaSet ? CONFIG_REPLICA_SET : null, true, false));
+        for (int i = 0; i < shards; i++) {
+            roles.add(new MemberRole("shard" + i, false, true));
+        }
+
+        List<Integer> ports = new ArrayList<Integer>();
+        List<String> dataDirectories = new ArrayList<String>();
+        for (int i = 0; i < roles.size(); i++) {
+            ports.add(isRandomPort() ? reservePort() : mongosPort + 1 + i);
+            dataDirectories.add(new File(root, i == 0 ? "config" : "shard-" + (i - 1)).getAbsolutePath());
+        }
+
+        List<MongodProcess> pool = startAll(ports, dataDirectories, roles);
+        MongodShutdown shutdown = new MongodShutdown(MongodShutdown.DEFAULT_SHUTDOWN_TIMEOUT, MongodShutdown.DEFAULT_KILL_TIMEOUT, getLog());
+        MongosProcess mongos = null;
+        try {
+            long setupStart = System.nanoTime();
+            List<ReplicaSet> sets = new ArrayList<ReplicaSet>();
+            for (int i = 0; i < pool.size(); i++) {
+                MemberRole role = roles.get(i);
+                if (role.replicaSet != null) {
+                    String host = getProbeHost() + ":" + pool.get(i).getConfig().net().getPort();
+                    sets.add(new ReplicaSet(role.replicaSet, Collections.singletonList(host), role.configServer));
+                }
+            }
+            initiateAll(sets);
+
+            String configHost = getProbeHost() + ":" + pool.get(0).getConfig().net().getPort();
+            mongos = startMongos(mongosPort, configHost, configReplicaSet ? CONFIG_REPLICA_SET : null);
+
+            List<String> shardSeeds = new ArrayList<String>();
+            for (ReplicaSet set : sets.subList(configReplicaSet ? 1 : 0, sets.size())) {
+                shardSeeds.add(set.seedList());
+            }
+            new ShardedCluster(getProbeHost() + ":" + mongosPort, getLog()).configure(shardSeeds, shardedCollections);
+            timings.addPhase("clusterSetup", setupStart);
+        } catch (MojoExecutionException e) {
+            if (mongos != null) {
+                shutdown.stop(mongos);
+            }
+            shutdown.stopAll(pool);
+            throw e;
+        }
+
+        getPluginContext().put(MONGOS_CONTEXT_PROPERTY_NAME, mongos);
+        savePortToProjectProperties(mongosPort);
+        String connectionString = "mongodb://" + getProbeHost() + ":" + mongosPort;
+        project.getProperties().put("embedmongo.connectionString", connectionString);
+        getLog().info("Sharded cluster with " + shards + " shard(s) available at " + connectionString);
+        return pool;
+    }
+
+    private File getPoolDirectory() throws MojoExecutionException {
+        try {
+            return getDatabaseDirectory();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to create data directory", e);
+        }
+    }
 
-        MongodExecutable executable;
+    /**
+     * Prepares the executables one after another so the distribution is
+     * downloaded and extracted only once, then starts all of them at the same
+     * time. If any fails to start, the others are stopped again.
+     */
+    private List<MongodProcess> startAll(List<Integer> ports, List<String> dataDirectories, List<MemberRole> roles) throws MojoExecutionException, MojoFailureException {
+        int instances = ports.size();
+        List<MongodExecutable> executables = new ArrayList<MongodExecutable>();
+        for (int i = 0; i < instances; i++) {
+            executables.add(prepareMongod(ports.get(i), dataDirectories.get(i), roles.get(i)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(instances, new DaemonThreadFactory("embedmongo-mongod-start"));
+        List<Future<MongodProcess>> futures = new ArrayList<Future<MongodProcess>>();
         try {
+            for (int i = 0; i < instances; i++) {
+                final MongodExecutable executable = executables.get(i);
+                final int port = ports.get(i);
+                final String dataDirectory = dataDirectories.get(i);
+                final MemberRole role = roles.get(i);
+                futures.add(executor.submit(() -> startWithRetry(executable, port, dataDirectory, role)));
+            }
+
+            List<MongodProcess> pool = new ArrayList<MongodProcess>();
+            MojoExecutionException failure = null;
+            for (Future<MongodProcess> future : futures) {
+                try {
+                    pool.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = ExecutionFailures.unwrap(e, "Unable to start the mongod");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    failure = new MojoExecutionException("Interrupted while starting mongod instances", e);
+                    break;
+                }
+            }
+
+            if (failure != null) {
+                new MongodShutdown(MongodShutdown.DEFAULT_SHUTDOWN_TIMEOUT, MongodShutdown.DEFAULT_KILL_TIMEOUT, getLog()).stopAll(pool);
+                throw failure;
+            }
+            return pool;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Initiates the given replica sets and waits for their primaries, all in
+     * parallel.
+     */
+    private void initiateAll(List<ReplicaSet> sets) throws MojoExecutionException {
+        if (sets.isEmpty()) {
+            return;
+        }
 
-            final List<String> mongodArgs = this.createMongodArgsList(); 
+        ExecutorService executor = Executors.newFixedThreadPool(sets.size(), new DaemonThreadFactory("embedmongo-replica-set"));
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            for (final ReplicaSet set : sets) {
+                futures.add(executor.submit(() -> {
+                    set.initiate();
+                    return set.awaitPrimary(readinessTimeout);
+                }));
+            }
+
+            for (int i = 0; i < sets.size(); i++) {
+                try {
+                    long primaryMillis = futures.get(i).get();
+                    getLog().debug("Replica set " + sets.get(i).getName() + " elected a primary after " + primaryMillis + "ms");
+                } catch (ExecutionException e) {
+                    throw ExecutionFailures.unwrap(e, "Unable to initiate replica set " + sets.get(i).getName());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while initiating replica sets", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private MongosProcess startMongos(int port, String configDb, String configReplicaSet) throws MojoExecutionException {
+        try {
+            IRuntimeConfig runtimeConfig = new RuntimeConfigBuilder()
+                    .defaults(Command.MongoS)
+                    .processOutput(getOutputConfig())
+                    .artifactStore(getArtifactStore(Command.MongoS))
+                    .build();
+
+            MongosConfigBuilder config = new MongosConfigBuilder()
+                    .version(getVersion())
+                    .net(new Net(bindIp, port, NetworkUtils.localhostIsIPv6()))
+                    .configDB(configDb);
+            if (configReplicaSet != null) {
+                config.replicaSet(configReplicaSet);
+            }
+
+            long spawnStart = System.nanoTime();
+            MongosProcess mongos = MongosStarter.getInstance(runtimeConfig).prepare(config.build()).start();
+            long spawnMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - spawnStart);
+            try {
+                timings.addInstance(port, spawnMillis, ReadinessProbe.awaitPing(getProbeHost(), port, readinessTimeout));
+            } catch (MojoExecutionException e) {
+                mongos.stop();
+                throw e;
+            }
+            return mongos;
+        } catch (MojoFailureException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } catch (DistributionException e) {
+            throw new MojoExecutionException("Failed to download MongoDB distribution: " + e.withDistribution(), e);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to start mongos", e);
+        }
+    }
+
+    private int getPoolSize() {
+        if (shards > 0) {
+            return shards + 1;
+        }
+        return replicaSet != null ? replicaSetMembers : instances;
+    }
+
+    private void initiateReplicaSet(List<MongodProcess> pool) throws MojoExecutionException {
+        List<String> hosts = new ArrayList<String>();
+        for (MongodProcess member : pool) {
+            hosts.add(getProbeHost() + ":" + member.getConfig().net().getPort());
+        }
+
+        ReplicaSet set = new ReplicaSet(replicaSet, hosts);
+        long initiateStart = System.nanoTime();
+        try {
+            set.initiate();
+            long primaryMillis = set.awaitPrimary(readinessTimeout);
+            getLog().info("Replica set " + replicaSet + " elected " + set.getPrimary() + " primary after " + primaryMillis + "ms");
+        } catch (MojoExecutionException e) {
+            new MongodShutdown(MongodShutdown.DEFAULT_SHUTDOWN_TIMEOUT, MongodShutdown.DEFAULT_KILL_TIMEOUT, getLog()).stopAll(pool);
+            getPluginContext().remove(MONGOD_POOL_CONTEXT_PROPERTY_NAME);
+            throw e;
+        }
+        timings.addPhase("replSetInitiate", initiateStart);
+
+        // clients of embedmongo.port, including this plugin's, talk to the primary only
+        savePortToProjectProperties(set.getPrimaryPort());
+        project.getProperties().put("embedmongo.connectionString", set.connectionString());
+        getLog().info("Replica set available at " + set.connectionString());
+    }
+
+    /**
+     * Starts mongod, moving it to another leased port when something outside
+     * this plugin bound the port between the lease and mongod's own bind.
+     */
+    private MongodProcess startWithRetry(MongodExecutable executable, int port, String dataDirectory) throws MojoExecutionException, MojoFailureException {
+        return startWithRetry(executable, port, dataDirectory, defaultRole());
+    }
+
+    private MongodProcess startWithRetry(MongodExecutable executable, int port, String dataDirectory, MemberRole role) throws MojoExecutionException, MojoFailureException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return start(executable, port);
+            } catch (MojoExecutionException e) {
+                if (!isRandomPort() || attempt == PORT_ATTEMPTS || !isAddressInUse(e)) {
+                    throw e;
+                }
+                getLog().warn("Port " + port + " was taken before mongod could bind to it, retrying on another port");
+                releasePort(port);
+                port = reservePort();
+                executable = prepareMongod(port, dataDirectory, role);
+            }
+        }
+    }
+
+    static boolean isAddressInUse(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().toLowerCase().contains("already in use")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int reservePort() throws MojoExecutionException, MojoFailureException {
+        PortAllocator allocator;
+        try {
+            allocator = PortAllocator.forRange(portLeaseDirectory, portRange);
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException(e.getMessage());
+        }
+
+        try {
+            PortAllocator.Lease lease = allocator.reserve();
+            leases.add(lease);
+            return lease.getPort();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to reserve a port for mongod", e);
+        }
+    }
+
+    private void releasePort(int port) {
+        synchronized (leases) {
+            for (Iterator<PortAllocator.Lease> i = leases.iterator(); i.hasNext();) {
+                PortAllocator.Lease lease = i.next();
+                if (lease.getPort() == port) {
+                    i.remove();
+                    closeQuietly(lease);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the port leases held for mongod processes that have stopped.
+     */
+    static void releasePorts(List<PortAllocator.Lease> leases) {
+        synchronized (leases) {
+            for (PortAllocator.Lease lease : leases) {
+                closeQuietly(lease);
+            }
+            leases.clear();
+        }
+    }
+
+    private static void closeQuietly(PortAllocator.Lease lease) {
+        try {
+            lease.close();
+        } catch (IOException e) {
+            // the lock is dropped when the JVM exits in any case
+        }
+    }
+
+    private MongodExecutable prepareMongod(int port, String dataDirectory) throws MojoExecutionException, MojoFailureException {
+        return prepareMongod(port, dataDirectory, defaultRole());
+    }
+
+    private MongodExecutable prepareMongod(int port, String dataDirectory, MemberRole role) throws MojoExecutionException, MojoFailureException {
+        try {
+            final List<String> mongodArgs = this.createMongodArgsList(role);
             final ICommandLinePostProcessor commandLinePostProcessor = new ICommandLinePostProcessor() {
                 @Override
                 public List<String> process(final Distribution distribution, final List<String> args) {
@@ -170,54 +955,215 @@ public class StartMojo extends AbstractEmbeddedMongoMojo {
             IRuntimeConfig runtimeConfig = new RuntimeConfigBuilder()
                     .defaults(Command.MongoD)
                     .processOutput(getOutputConfig())
-                    .artifactStore(getArtifactStore())
+                    .artifactStore(getArtifactStore(Command.MongoD))
                     .commandLinePostProcessor(commandLinePostProcessor)
                     .build();
 
-            int port = getPort();
-
-            if (isRandomPort()) {
-                port = NetworkUtils.allocateRandomPort();
-            }
-            savePortToProjectProperties(port);
-
-            IMongodConfig config = new MongodConfigBuilder()
-                    .version(getVersion()).net(new Net(bindIp, port, NetworkUtils.localhostIsIPv6()))
-                    .replication(new Storage(getDataDirectory(), null, 0))
-                    .cmdOptions(new MongoCmdOptionsBuilder()
-                            .enableAuth(authEnabled)
-                            .useNoJournal(!journal)
-                            .useStorageEngine(storageEngine)
-                            .build())
-                    .build();
-
-            executable = MongodStarter.getInstance(runtimeConfig).prepare(config);
+            return MongodStarter.getInstance(runtimeConfig).prepare(getMongodConfig(port, dataDirectory, role));
         } catch (DistributionException e) {
             throw new MojoExecutionException("Failed to download MongoDB distribution: " + e.withDistribution(), e);
         } catch (IOException e) {
             throw new MojoExecutionException("Unable to Config MongoDB: ", e);
         }
+    }
+
+    private IMongodConfig getMongodConfig(int port, String dataDirectory, MemberRole role) throws IOException {
+        return new MongodConfigBuilder()
+                .version(getVersion()).net(new Net(bindIp, port, NetworkUtils.localhostIsIPv6()))
+                .replication(new Storage(dataDirectory, role.replicaSet, 0))
+                .configServer(role.configServer)
+                .shardServer(role.shardServer)
+                .cmdOptions(getCmdOptions(role))
+                .build();
+    }
 
+    /**
+     * Attaches to the daemon started with the same configuration by an
+     * earlier build, or starts it if it is not running.
+     */
+    void startOrAttachDaemon() throws MojoExecutionException, MojoFailureException {
+        if (shared || dataCache) {
+            throw new MojoFailureException("daemon cannot be combined with shared or dataCache");
+        }
+        if (System.getProperty("os.name").toLowerCase().indexOf("win") != -1) {
+            throw new MojoFailureException("daemon is not supported on Windows");
+        }
+
+        MongodDaemon daemon = MongodDaemon.forConfiguration(daemonDirectory, getConfigurationKey());
+        String version = getVersion().asInDownloadPath();
         try {
-            MongodProcess mongod = executable.start();
-
-            if (isWait()) {
-                while (true) {
-                    try {
-                        TimeUnit.MINUTES.sleep(5);
-                    } catch (InterruptedException e) {
-                        break;
+            synchronized (MongodDaemon.class) {
+                try (Closeable lock = daemon.lock()) {
+                    if (daemon.load() && daemon.isRunning()) {
+                        getLog().info("Attaching to mongod daemon " + daemon.getHash() + " on port " + daemon.getPort() + " (pid " + daemon.getPid() + ")");
+                    } else {
+                        // whatever was recorded is stale, start afresh
+                        daemon.delete();
+                        if (!isRandomPort()) {
+                            stopDaemonsOnPort(getPort(), daemon);
+                        }
+                        int port = isRandomPort() ? reservePort() : getPort();
+                        daemon.save(forkDaemon(daemon, port), getProbeHost(), port, version);
+                        getLog().info("Started mongod daemon " + daemon.getHash() + " on port " + port + " (pid " + daemon.getPid() + "), logging to " + daemon.getLogFile());
                     }
                 }
             }
 
-            getPluginContext().put(MONGOD_CONTEXT_PROPERTY_NAME, mongod);
+            String fingerprint = DataDirectoryCache.fingerprint(project, version, activeStorageEngine);
+            int seeds = PluginExecutions.configurations(project, "mongo-import").size()
+                    + PluginExecutions.configurations(project, "mongo-scripts").size();
+            daemon.expectSeeds(fingerprint, seeds);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to start or attach to the mongod daemon in " + daemonDirectory, e);
+        }
+
+        savePortToProjectProperties(daemon.getPort());
+        getPluginContext().put(DAEMON_CONTEXT_PROPERTY_NAME, daemon);
+    }
+
+    /**
+     * Stops daemons started with another configuration that hold the port
+     * this execution needs.
+     */
+    private void stopDaemonsOnPort(int port, MongodDaemon replacement) throws IOException {
+        for (MongodDaemon other : MongodDaemon.all(daemonDirectory)) {
+            if (other.getHash().equals(replacement.getHash())) {
+                continue;
+            }
+            try (Closeable lock = other.lock()) {
+                if (other.load() && other.getPort() == port) {
+                    if (other.isRunning()) {
+                        getLog().info("Stopping mongod daemon " + other.getHash() + " on port " + port + ", its configuration differs");
+                        new MongodShutdown(MongodShutdown.DEFAULT_SHUTDOWN_TIMEOUT, MongodShutdown.DEFAULT_KILL_TIMEOUT, getLog())
+                                .stop(new ServerAddress(other.getHost(), port), other.getPid());
+                    }
+                    other.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts mongod with {@code --fork}, so that it detaches from this JVM
+     * and its output goes to a log file rather than to a pipe that closes
+     * when the build ends.
+     *
+     * @return the pid of the forked mongod
+     */
+    private long forkDaemon(MongodDaemon daemon, int port) throws IOException, MojoExecutionException {
+        Distribution distribution = Distribution.detectFor(getVersion());
+        IArtifactStore artifactStore = getArtifactStore(Command.MongoD);
+        IExtractedFileSet files;
+        try {
+            if (!artifactStore.checkDistribution(distribution)) {
+                throw new MojoExecutionException("Failed to download MongoDB distribution: " + distribution);
+            }
+            files = artifactStore.extractFileSet(distribution);
+        } catch (DistributionException e) {
+            throw new MojoExecutionException("Failed to download MongoDB distribution: " + e.withDistribution(), e);
+        }
+
+        File dataDirectory = databaseDirectory != null ? databaseDirectory : daemon.getDataDirectory();
+        Files.createDirectories(daemon.getHome().toPath());
+        Files.createDirectories(dataDirectory.toPath());
+        File pidFile = new File(daemon.getHome(), "mongod.pid");
+        Files.deleteIfExists(pidFile.toPath());
+
+        List<String> command = Mongod.enhanceCommandLinePlattformSpecific(distribution,
+                Mongod.getCommandLine(getMongodConfig(port, dataDirectory.getAbsolutePath(), defaultRole()), files, pidFile));
+        command.addAll(createMongodArgsList(defaultRole()));
+        command.add("--fork");
+        command.add("--logpath=" + daemon.getLogFile().getAbsolutePath());
+        command.add("--logappend");
+        command.add("--pidfilepath=" + pidFile.getAbsolutePath());
+
+        long spawnStart = System.nanoTime();
+        // the launching process exits once the forked mongod is ready for connections
+        Process launcher = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(daemon.getHome(), "fork.out"))
+                .start();
+        try {
+            if (!launcher.waitFor(readinessTimeout, TimeUnit.MILLISECONDS)) {
+                launcher.destroy();
+                throw new MojoExecutionException("mongod daemon did not start within " + readinessTimeout + "ms, see " + daemon.getLogFile());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while starting the mongod daemon", e);
+        }
+        if (launcher.exitValue() != 0) {
+            throw new MojoExecutionException("mongod daemon failed to start (exit code " + launcher.exitValue() + "), see " + daemon.getLogFile());
+        }
+        long spawnMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - spawnStart);
+
+        long pingMillis = ReadinessProbe.awaitPing(getProbeHost(), port, readinessTimeout);
+        timings.addInstance(port, spawnMillis, pingMillis);
+
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.UTF_8).trim());
+        } catch (NumberFormatException e) {
+            throw new MojoExecutionException("Unable to read the pid of the mongod daemon from " + pidFile, e);
+        }
+    }
+
+    /**
+     * Starts mongod and waits until it answers a ping, recording how long
+     * each step took.
+     */
+    private MongodProcess start(MongodExecutable executable, int port) throws MojoExecutionException {
+        long spawnStart = System.nanoTime();
+        MongodProcess process;
+        try {
+            process = executable.start();
         } catch (IOException e) {
             throw new MojoExecutionException("Unable to start the mongod", e);
         }
+        long spawnMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - spawnStart);
+
+        try {
+            long pingMillis = ReadinessProbe.awaitPing(getProbeHost(), port, readinessTimeout);
+            timings.addInstance(port, spawnMillis, pingMillis);
+            getLog().debug("mongod on port " + port + " spawned in " + spawnMillis + "ms and answered a ping after " + pingMillis + "ms");
+        } catch (MojoExecutionException e) {
+            process.stop();
+            throw e;
+        }
+        return process;
+    }
+
+    private String getProbeHost() {
+        String host = isBlank(bindIp) ? null : bindIp.split(",")[0].trim();
+        return host == null || "0.0.0.0".equals(host) || "::".equals(host) ? "localhost" : host;
     }
 
-    private List<String> createMongodArgsList() {
+    private void writeStartupReport() {
+        try {
+            timings.write(startupReport);
+            getLog().info("Startup timings " + timings.getPhases() + " written to " + startupReport);
+        } catch (IOException e) {
+            getLog().warn("Unable to write startup report " + startupReport, e);
+        }
+    }
+
+    private IMongoCmdOptions getCmdOptions(MemberRole role) {
+        // replica set members always journal, wiredTiger refuses to run them without
+        boolean member = role.replicaSet != null;
+        MongoCmdOptionsBuilder cmdOptions = new MongoCmdOptionsBuilder()
+                .enableAuth(authEnabled)
+                .useNoJournal(!member && (!isJournal() || ephemeral))
+                // config server replica sets only run on wiredTiger
+                .useStorageEngine(member && role.configServer ? "wiredTiger" : activeStorageEngine);
+
+        if (ephemeral) {
+            cmdOptions.syncDelay(0);
+        } else if (mongodProfile != null && mongodProfile.getSyncDelay() != null) {
+            cmdOptions.syncDelay(mongodProfile.getSyncDelay());
+        }
+        return cmdOptions.build();
+    }
+
+    private List<String> createMongodArgsList(MemberRole role) {
         List<String> mongodArgs = new ArrayList<String>();
 
         if (System.getProperty("os.name").toLowerCase().indexOf("win") == -1 
@@ -225,9 +1171,61 @@ public class StartMojo extends AbstractEmbeddedMongoMojo {
             mongodArgs.add("--unixSocketPrefix=" + this.unixSocketPrefix);
         }
 
+        if (wiredTigerCacheSizeGB != null) {
+            mongodArgs.add("--wiredTigerCacheSizeGB=" + wiredTigerCacheSizeGB);
+        }
+
+        mongodArgs.addAll(profileArgs);
+
+        if (role.replicaSet != null && profileArgs.stream().noneMatch(arg -> arg.startsWith("--oplogSize="))) {
+            mongodArgs.add("--oplogSize=" + REPLICA_SET_OPLOG_SIZE_MB);
+        }
+
         return mongodArgs;
     }
 
+    private void autoTune(String version) {
+        ContainerLimits limits = ContainerLimits.detect();
+        getLog().info("Auto-tuning mongod for " + limits);
+
+        if (!"wiredTiger".equalsIgnoreCase(activeStorageEngine)) {
+            getLog().info("Storage engine " + activeStorageEngine + " has no cache to size, leaving mongod defaults");
+            return;
+        }
+
+        wiredTigerCacheSizeGB = limits.wiredTigerCacheSizeGB(version, Math.max(1, getPoolSize()), getLog());
+        if (wiredTigerCacheSizeGB != null) {
+            getLog().info("Using wiredTigerCacheSizeGB=" + wiredTigerCacheSizeGB);
+        }
+    }
+
+    private void applyProfile(String version) throws MojoFailureException {
+        try {
+            mongodProfile = MongodProfile.forName(profile);
+        } catch (IllegalArgumentException e) {
+            throw new MojoFailureException(e.getMessage());
+        }
+
+        if (mongodProfile == MongodProfile.DURABLE && ephemeral) {
+            throw new MojoFailureException("The durable profile cannot be combined with ephemeral");
+        }
+
+        profileArgs = mongodProfile.args(version, activeStorageEngine, getLog());
+        if (wiredTigerCacheSizeGB != null) {
+            // the cache size derived from the container limits wins
+            profileArgs.removeIf(arg -> arg.startsWith("--wiredTigerCacheSizeGB="));
+        }
+        getLog().info("Using profile " + profile + (profileArgs.isEmpty() ? "" : " " + String.join(" ", profileArgs)));
+    }
+
+    private boolean isJournal() {
+        return mongodProfile != null ? mongodProfile.journal(getVersion().asInDownloadPath(), journal) : journal;
+    }
+
+    private MemberRole defaultRole() {
+        return new MemberRole(replicaSet, false, false);
+    }
+
     private ProcessOutput getOutputConfig() throws MojoFailureException {
 
         LoggingStyle loggingStyle = LoggingStyle.valueOf(logging.toUpperCase());
@@ -246,9 +1244,17 @@ public class StartMojo extends AbstractEmbeddedMongoMojo {
 
     }
 
-    private IArtifactStore getArtifactStore() {
-        IDownloadConfig downloadConfig = new DownloadConfigBuilder().defaultsForCommand(Command.MongoD).proxyFactory(getProxyFactory(settings)).downloadPath(downloadPath).build();
-        return new ExtractedArtifactStoreBuilder().defaults(Command.MongoD).download(downloadConfig).build();
+    IArtifactStore getArtifactStore(Command command) {
+        IDownloadConfig downloadConfig = new DownloadConfigBuilder().defaultsForCommand(command).proxyFactory(getProxyFactory(settings)).downloadPath(downloadPath).build();
+        IArtifactStore artifactStore = new ExtractedArtifactStoreBuilder()
+                .defaults(command)
+                .download(downloadConfig)
+                .downloader(new RangeDownloader(downloadConnections))
+                .build();
+        if (binaryCache) {
+            artifactStore = new BinaryCache(artifactStore, command, binaryCacheDirectory, binaryCacheSize * 1024 * 1024);
+        }
+        return timings != null ? timings.timed(artifactStore) : artifactStore;
     }
 
     public IProxyFactory getProxyFactory(Settings settings) {
@@ -269,11 +1275,68 @@ public class StartMojo extends AbstractEmbeddedMongoMojo {
         return new NoProxyFactory();
     }
 
-    private String getDataDirectory() {
-        if (databaseDirectory != null) {
-            return databaseDirectory.getAbsolutePath();
+    @SuppressWarnings("unchecked")
+    private String prepareDataCache() throws IOException {
+        File directory = databaseDirectory;
+        if (directory == null) {
+            directory = Files.createTempDirectory("embedmongo-db").toFile();
+            getPluginContext().put(TEMP_DATA_DIRECTORY_CONTEXT_PROPERTY_NAME, directory);
+        }
+
+        String fingerprint = DataDirectoryCache.fingerprint(project, getVersion().asInDownloadPath(), activeStorageEngine);
+        DataDirectoryCache cache = new DataDirectoryCache(dataCacheDirectory, fingerprint, directory);
+
+        if (cache.restore()) {
+            getLog().info("Restored cached data directory with fingerprint " + fingerprint);
         } else {
-            return null;
+            int seeds = PluginExecutions.configurations(project, "mongo-import").size()
+                    + PluginExecutions.configurations(project, "mongo-scripts").size();
+            cache.expectSeeds(seeds);
+            getLog().info("No cached data directory with fingerprint " + fingerprint + ", it will be cached after " + seeds + " seeding execution(s)");
+        }
+
+        getPluginContext().put(DATA_CACHE_CONTEXT_PROPERTY_NAME, cache);
+        return directory.getAbsolutePath();
+    }
+
+    /**
+     * @return the directory to hold the data files, or a new temporary
+     *         directory (on tmpfs in ephemeral mode) that the stop goal
+     *         deletes in the background. The temporary directory is created
+     *         here rather than left to mongod, which would delete it
+     *         synchronously when it stops.
+     */
+    @SuppressWarnings("unchecked")
+    File getDatabaseDirectory() throws IOException {
+        if (databaseDirectory != null) {
+            return databaseDirectory;
+        }
+
+        File tmpfs = ephemeral ? EphemeralStorage.tmpfsDirectory(EphemeralStorage.TMPFS_DIRECTORIES) : null;
+        if (ephemeral && tmpfs == null) {
+            getLog().info("No tmpfs available, ephemeral data will be kept in the default temporary directory");
+        }
+
+        File directory = (tmpfs != null ? Files.createTempDirectory(tmpfs.toPath(), "embedmongo-db") : Files.createTempDirectory("embedmongo-db")).toFile();
+        getPluginContext().put(TEMP_DATA_DIRECTORY_CONTEXT_PROPERTY_NAME, directory);
+        if (tmpfs != null) {
+            getLog().info("Keeping ephemeral data in " + directory);
+        }
+        return directory;
+    }
+
+    /**
+     * How a mongod takes part in a replica set or sharded cluster.
+     */
+    private static final class MemberRole {
+        private final String replicaSet;
+        private final boolean configServer;
+        private final boolean shardServer;
+
+        MemberRole(String replicaSet, boolean configServer, boolean shardServer) {
+            this.replicaSet = replicaSet;
+            this.configServer = configServer;
+            this.shardServer = shardServer;
         }
     }
 
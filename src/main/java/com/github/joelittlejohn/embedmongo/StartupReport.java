@@ -0,0 +1,130 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.extract.IExtractedFileSet;
+import de.flapdoodle.embed.process.store.IArtifactStore;
+
+/**
+ * Collects how long each phase of starting mongod takes and writes it out as
+ * a JSON report, so startup latency can be compared across MongoDB versions
+ * and storage engines.
+ * <p>
+ * Download and extraction are shared by all instances started by one
+ * execution and are timed by wrapping the artifact store. Process spawn and
+ * the first successful ping are recorded per instance.
+ */
+class StartupReport {
+
+    static final String DOWNLOAD = "download";
+    static final String EXTRACT = "extract";
+
+    private final String version;
+    private final String storageEngine;
+    private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+    private final List<Document> instances = new ArrayList<Document>();
+
+    StartupReport(String version, String storageEngine) {
+        this.version = version;
+        this.storageEngine = storageEngine;
+    }
+
+    /**
+     * @return an artifact store that records the time spent downloading and
+     *         extracting the distribution in this report
+     */
+    IArtifactStore timed(final IArtifactStore delegate) {
+        return new IArtifactStore() {
+            @Override
+            public boolean checkDistribution(Distribution distribution) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return delegate.checkDistribution(distribution);
+                } finally {
+                    addPhase(DOWNLOAD, start);
+                }
+            }
+
+            @Override
+            public IExtractedFileSet extractFileSet(Distribution distribution) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return delegate.extractFileSet(distribution);
+                } finally {
+                    addPhase(EXTRACT, start);
+                }
+            }
+
+            @Override
+            public void removeFileSet(Distribution distribution, IExtractedFileSet files) {
+                delegate.removeFileSet(distribution, files);
+            }
+        };
+    }
+
+    /**
+     * Adds the time elapsed since {@code startNanos} to the given phase.
+     */
+    synchronized void addPhase(String phase, long startNanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        Long previous = phases.get(phase);
+        phases.put(phase, previous == null ? millis : previous + millis);
+    }
+
+    synchronized void addInstance(int port, long spawnMillis, long pingMillis) {
+        instances.add(new Document("port", port).append("spawn", spawnMillis).append("ping", pingMillis));
+    }
+
+    synchronized boolean hasInstances() {
+        return !instances.isEmpty();
+    }
+
+    synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<String, Long>(phases);
+    }
+
+    synchronized String toJson() {
+        return new Document("version", version)
+                .append("storageEngine", storageEngine)
+                .append("phases", new Document(new LinkedHashMap<String, Object>(phases)))
+                .append("instances", new ArrayList<Document>(instances))
+                .toJson(JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).indent(true).build());
+    }
+
+    void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        Files.write(file.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+}
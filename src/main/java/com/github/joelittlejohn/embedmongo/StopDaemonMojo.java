@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.mongodb.ServerAddress;
+
+/**
+ * When invoked, this goal stops every mongod daemon left running by the
+ * <code>start</code> goal in daemon mode, and deletes its state, log and
+ * data.
+ */
+@Mojo(name="stop-daemon", requiresProject = false)
+public class StopDaemonMojo extends AbstractEmbeddedMongoMojo {
+
+    /**
+     * The directory holding the state files, logs and data of mongod
+     * daemons.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.daemonDirectory", defaultValue = "${user.home}/.embedmongo/daemons")
+    private File daemonDirectory;
+
+    /**
+     * How long to wait, in milliseconds, for mongod to exit after the
+     * shutdown command before sending it SIGTERM.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.shutdownTimeout", defaultValue = "10000")
+    private long shutdownTimeout;
+
+    /**
+     * How long to wait, in milliseconds, for mongod to exit after SIGTERM
+     * before sending it SIGKILL.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.killTimeout", defaultValue = "5000")
+    private long killTimeout;
+
+    @Override
+    public void executeStart() throws MojoExecutionException, MojoFailureException {
+        List<MongodDaemon> daemons = MongodDaemon.all(daemonDirectory);
+        if (daemons.isEmpty()) {
+            getLog().info("No mongod daemon found in " + daemonDirectory);
+            return;
+        }
+
+        MongodShutdown shutdown = new MongodShutdown(shutdownTimeout, killTimeout, getLog());
+        for (MongodDaemon daemon : daemons) {
+            try (Closeable lock = daemon.lock()) {
+                if (daemon.load() && daemon.isRunning()) {
+                    getLog().info("Stopping mongod daemon " + daemon.getHash() + " on port " + daemon.getPort() + " (pid " + daemon.getPid() + ")");
+                    shutdown.stop(new ServerAddress(daemon.getHost(), daemon.getPort()), daemon.getPid());
+                } else {
+                    getLog().info("mongod daemon " + daemon.getHash() + " is no longer running, removing its state");
+                }
+                daemon.delete();
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to stop mongod daemon " + daemon.getHash(), e);
+            }
+        }
+    }
+
+}
@@ -15,12 +15,27 @@
  */
 package com.github.joelittlejohn.embedmongo;
 
+import static org.apache.commons.lang3.StringUtils.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 
 import de.flapdoodle.embed.mongo.MongodProcess;
+import de.flapdoodle.embed.mongo.MongosProcess;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 
 /**
  * When invoked, this goal stops an instance of mojo that was started by this
@@ -29,15 +44,173 @@ import org.apache.maven.plugins.annotations.Mojo;
 @Mojo(name="stop", defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST)
 public class StopMojo extends AbstractEmbeddedMongoMojo {
 
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true)
+    private List<MavenProject> reactorProjects;
+
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    private PluginDescriptor plugin;
+
+    /**
+     * How long to wait, in milliseconds, for mongod to exit after the
+     * shutdown command before sending it SIGTERM.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.shutdownTimeout", defaultValue = "10000")
+    private long shutdownTimeout;
+
+    /**
+     * How long to wait, in milliseconds, for mongod to exit after SIGTERM
+     * before sending it SIGKILL.
+     *
+     * @since 0.4.3
+     */
+    @Parameter(property = "embedmongo.killTimeout", defaultValue = "5000")
+    private long killTimeout;
+
     @Override
     public void executeStart() throws MojoExecutionException, MojoFailureException {
+        Future<?> startup = (Future<?>) getPluginContext().remove(StartMojo.ASYNC_START_CONTEXT_PROPERTY_NAME);
+        if (startup != null && !startup.isDone()) {
+            getLog().info("Waiting for the background start to finish before stopping mongod");
+            AwaitMojo.await(startup, Long.MAX_VALUE);
+        }
+
+        MongoClientRegistry clients = (MongoClientRegistry) getPluginContext().remove(StartMojo.CLIENT_REGISTRY_CONTEXT_PROPERTY_NAME);
+        if (clients != null) {
+            // close connections before mongod goes away, rather than have them fail
+            clients.close();
+        }
+
+        MongodDaemon daemon = (MongodDaemon) getPluginContext().remove(StartMojo.DAEMON_CONTEXT_PROPERTY_NAME);
+        if (daemon != null) {
+            getLog().info("Leaving mongod daemon " + daemon.getHash() + " running on port " + daemon.getPort() + ", run the stop-daemon goal to stop it");
+            releasePortLeases();
+            return;
+        }
+
         MongodProcess mongod = (MongodProcess) getPluginContext().get(StartMojo.MONGOD_CONTEXT_PROPERTY_NAME);
+        String sharedKey = (String) getPluginContext().remove(StartMojo.SHARED_MONGOD_CONTEXT_PROPERTY_NAME);
 
-        if (mongod != null) {
-            mongod.stop();
+        @SuppressWarnings("unchecked")
+        List<MongodProcess> pool = (List<MongodProcess>) getPluginContext().remove(StartMojo.MONGOD_POOL_CONTEXT_PROPERTY_NAME);
+
+        if (pool != null) {
+            MongosProcess mongos = (MongosProcess) getPluginContext().remove(StartMojo.MONGOS_CONTEXT_PROPERTY_NAME);
+            if (mongos != null) {
+                getLog().info("Stopping mongos");
+                shutdown().stop(mongos);
+            }
+            getLog().info("Stopping " + pool.size() + " mongod instances");
+            shutdown().stopAll(pool);
+            releasePortLeases();
+            deleteTempDataDirectory();
+        } else if (mongod != null && sharedKey != null) {
+            SharedMongod released = SharedMongod.release(sharedKey, isReusedByLaterModule(SharedMongod.settings(sharedKey)));
+            if (released == null) {
+                getLog().info("Leaving shared mongod running for other modules");
+            } else {
+                shutdown().stop(released.getProcess());
+                StartMojo.releasePorts(released.getPortLeases());
+                deleteDirectory(released.getTemporaryDirectory());
+            }
+        } else if (mongod != null) {
+            shutdown().stop(mongod);
+            releasePortLeases();
+            deleteTempDataDirectory();
         } else {
             throw new MojoFailureException("No mongod process found, it appears embedmongo:start was not called");
         }
     }
 
+    private MongodShutdown shutdown() {
+        return new MongodShutdown(shutdownTimeout, killTimeout, getLog());
+    }
+
+    /**
+     * @return {@code true} if a module later in the reactor runs a start
+     *         execution that will reuse the shared mongod with the given
+     *         settings, so it should be left running
+     */
+    boolean isReusedByLaterModule(Map<String, String> settings) {
+        if (reactorProjects == null || plugin == null || settings.isEmpty()) {
+            return false;
+        }
+
+        int current = reactorProjects.indexOf(project);
+        for (MavenProject later : reactorProjects.subList(current + 1, reactorProjects.size())) {
+            for (String goal : Arrays.asList("start", "start-async")) {
+                MojoDescriptor mojo = plugin.getMojo(goal);
+                if (mojo == null) {
+                    continue;
+                }
+                for (Xpp3Dom configuration : PluginExecutions.configurations(later, goal)) {
+                    if (settings.equals(sharedSettings(later, configuration, mojo))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves the parameters of another module's start execution the way
+     * {@link StartMojo#getSharedSettings()} does.
+     *
+     * @return the settings of the shared mongod the execution would use, or
+     *         {@code null} if it would not use one
+     */
+    private Map<String, String> sharedSettings(MavenProject later, Xpp3Dom configuration, MojoDescriptor mojo) {
+        Map<String, String> values = new HashMap<String, String>();
+        for (org.apache.maven.plugin.descriptor.Parameter parameter : mojo.getParameters()) {
+            values.put(parameter.getName(), PluginExecutions.resolve(later, configuration, parameter));
+        }
+
+        // the same conditions under which StartMojo acquires a shared mongod
+        if (!Boolean.parseBoolean(values.get("shared")) || Boolean.parseBoolean(values.get("skip"))
+                || Boolean.parseBoolean(values.get("daemon")) || values.get("replicaSet") != null
+                || !"0".equals(values.get("shards")) || !Arrays.asList("0", "1").contains(values.get("instances"))) {
+            return null;
+        }
+
+        String port = later.getProperties().getProperty("embedmongo.port");
+        if (isBlank(port)) {
+            port = values.get("port");
+        }
+
+        Map<String, String> settings = new HashMap<String, String>();
+        settings.put("version", getVersion(values.get("version"), values.get("features")).asInDownloadPath());
+        settings.put("features", values.get("features"));
+        settings.put("bindIp", values.get("bindIp"));
+        settings.put("port", Boolean.parseBoolean(values.get("randomPort")) ? "random" : port);
+        settings.put("storageEngine", values.get("storageEngine"));
+        settings.put("autoTune", String.valueOf(Boolean.parseBoolean(values.get("autoTune"))));
+        settings.put("profile", values.get("profile"));
+        settings.put("authEnabled", String.valueOf(Boolean.parseBoolean(values.get("authEnabled"))));
+        settings.put("journal", String.valueOf(Boolean.parseBoolean(values.get("journal"))));
+        settings.put("ephemeral", String.valueOf(Boolean.parseBoolean(values.get("ephemeral"))));
+        String databaseDirectory = values.get("databaseDirectory");
+        settings.put("databaseDirectory", databaseDirectory != null ? PluginExecutions.file(later, databaseDirectory).getAbsolutePath() : null);
+        return settings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void releasePortLeases() {
+        List<PortAllocator.Lease> leases = (List<PortAllocator.Lease>) getPluginContext().remove(StartMojo.PORT_LEASES_CONTEXT_PROPERTY_NAME);
+        if (leases != null) {
+            StartMojo.releasePorts(leases);
+        }
+    }
+
+    private void deleteTempDataDirectory() {
+        deleteDirectory((File) getPluginContext().remove(StartMojo.TEMP_DATA_DIRECTORY_CONTEXT_PROPERTY_NAME));
+    }
+
+    private void deleteDirectory(File directory) {
+        if (directory != null && directory.exists()) {
+            BackgroundDeletion.delete(directory, getLog());
+        }
+    }
+
 }
@@ -0,0 +1,61 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.Test;
+
+public class AwaitMojoTest {
+
+    @Test public void
+    should_return_once_startup_completes() throws Exception {
+        AwaitMojo.await(CompletableFuture.completedFuture(null), 1000);
+    }
+
+    @Test public void
+    should_rethrow_startup_failure() throws Exception {
+        MojoExecutionException failure = new MojoExecutionException("Unable to start the mongod");
+        CompletableFuture<Void> startup = new CompletableFuture<Void>();
+        startup.completeExceptionally(failure);
+
+        try {
+            AwaitMojo.await(startup, 1000);
+            fail();
+        } catch (MojoExecutionException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test(expected = MojoFailureException.class) public void
+    should_rethrow_configuration_failure() throws Exception {
+        CompletableFuture<Void> startup = new CompletableFuture<Void>();
+        startup.completeExceptionally(new MojoFailureException("ephemeral cannot be combined with dataCache"));
+
+        AwaitMojo.await(startup, 1000);
+    }
+
+    @Test(expected = MojoExecutionException.class) public void
+    should_fail_when_startup_takes_too_long() throws Exception {
+        AwaitMojo.await(new CompletableFuture<Void>(), 10);
+    }
+
+}
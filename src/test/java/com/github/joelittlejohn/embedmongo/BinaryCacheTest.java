@@ -0,0 +1,133 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.config.store.FileType;
+import de.flapdoodle.embed.process.distribution.BitSize;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.Platform;
+import de.flapdoodle.embed.process.extract.IExtractedFileSet;
+import de.flapdoodle.embed.process.extract.ImmutableExtractedFileSet;
+import de.flapdoodle.embed.process.store.IArtifactStore;
+
+public class BinaryCacheTest {
+
+    private static final Distribution V3_6 = new Distribution(Version.V3_6_5, Platform.Linux, BitSize.B64);
+    private static final Distribution V3_4 = new Distribution(Version.V3_4_15, Platform.Linux, BitSize.B64);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_extract_once_and_link_into_each_install() throws IOException {
+        IArtifactStore delegate = extractingStore(V3_6, 10);
+        BinaryCache cache = new BinaryCache(delegate, Command.MongoD, folder.newFolder("cache"), Long.MAX_VALUE);
+
+        assertFalse(cache.isCached(V3_6));
+        IExtractedFileSet first = cache.extractFileSet(V3_6);
+        IExtractedFileSet second = cache.extractFileSet(V3_6);
+
+        verify(delegate, times(1)).extractFileSet(V3_6);
+        assertTrue(cache.isCached(V3_6));
+        assertNotEquals(first.baseDir(), second.baseDir());
+        assertEquals("mongod", second.executable().getName());
+        assertEquals("0123456789", read(second.executable()));
+        assertEquals(1, second.files(FileType.Library).size());
+    }
+
+    @Test public void
+    should_not_check_download_when_cached() throws IOException {
+        IArtifactStore delegate = extractingStore(V3_6, 10);
+        BinaryCache cache = new BinaryCache(delegate, Command.MongoD, folder.newFolder("cache"), Long.MAX_VALUE);
+        cache.extractFileSet(V3_6);
+
+        assertTrue(cache.checkDistribution(V3_6));
+        verify(delegate, never()).checkDistribution(any(Distribution.class));
+    }
+
+    @Test public void
+    should_keep_cache_when_install_is_removed() throws IOException {
+        BinaryCache cache = new BinaryCache(extractingStore(V3_6, 10), Command.MongoD, folder.newFolder("cache"), Long.MAX_VALUE);
+        IExtractedFileSet install = cache.extractFileSet(V3_6);
+
+        cache.removeFileSet(V3_6, install);
+
+        assertFalse(install.baseDir().exists());
+        assertTrue(cache.isCached(V3_6));
+        assertEquals("0123456789", read(cache.extractFileSet(V3_6).executable()));
+    }
+
+    @Test public void
+    should_evict_least_recently_used_version_over_cap() throws IOException {
+        IArtifactStore delegate = extractingStore(V3_6, 100);
+        IExtractedFileSet older = fileSet("older", 100);
+        when(delegate.extractFileSet(V3_4)).thenReturn(older);
+        BinaryCache cache = new BinaryCache(delegate, Command.MongoD, folder.newFolder("cache"), 250);
+
+        cache.extractFileSet(V3_4);
+        cache.extractFileSet(V3_6);
+
+        assertFalse(cache.isCached(V3_4));
+        assertTrue(cache.isCached(V3_6));
+    }
+
+    private IArtifactStore extractingStore(Distribution distribution, int size) throws IOException {
+        IArtifactStore delegate = mock(IArtifactStore.class);
+        IExtractedFileSet extracted = fileSet("extracted-" + distribution.getVersion().asInDownloadPath(), size);
+        when(delegate.extractFileSet(distribution)).thenReturn(extracted);
+        return delegate;
+    }
+
+    private IExtractedFileSet fileSet(String name, int size) throws IOException {
+        File directory = folder.newFolder(name);
+        File executable = new File(directory, "mongod");
+        File library = new File(directory, "libssl.so");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            content.append(i % 10);
+        }
+        Files.write(executable.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(library.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        return ImmutableExtractedFileSet.builder(directory).executable(executable).file(FileType.Library, library).build();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.junit.Test;
+
+public class ChunkPreSplitterTest {
+
+    @Test public void
+    should_split_sample_into_equal_ranges() {
+        List<BsonValue> sorted = new ArrayList<BsonValue>();
+        for (int i = 0; i < 100; i++) {
+            sorted.add(new BsonInt32(i));
+        }
+
+        List<BsonValue> points = ChunkPreSplitter.splitPoints(sorted, ChunkPreSplitter.order(sorted), 4);
+
+        assertEquals(asList(new BsonInt32(25), new BsonInt32(50), new BsonInt32(75)), points);
+    }
+
+    @Test public void
+    should_not_repeat_split_points_for_skewed_sample() {
+        List<BsonValue> sorted = asList(new BsonString("a"), new BsonString("a"), new BsonString("a"), new BsonString("b"));
+        Comparator<BsonValue> order = ChunkPreSplitter.order(sorted);
+
+        assertEquals(asList((BsonValue) new BsonString("b")), ChunkPreSplitter.splitPoints(sorted, order, 4));
+    }
+
+    @Test public void
+    should_only_order_values_of_one_type() {
+        assertNull(ChunkPreSplitter.order(asList(new BsonInt32(1), new BsonString("1"))));
+        assertEquals(-1, Integer.signum(ChunkPreSplitter.order(asList(new BsonInt32(1), new BsonInt64(2)))
+                .compare(new BsonInt32(1), new BsonInt64(2))));
+    }
+
+    @Test public void
+    should_read_shard_key_at_dotted_path() {
+        BsonDocument document = BsonDocument.parse("{user: {id: 7}, name: 'x'}");
+
+        assertEquals(new BsonInt32(7), ChunkPreSplitter.value(document, "user.id"));
+        assertNull(ChunkPreSplitter.value(document, "name.first"));
+        assertNull(ChunkPreSplitter.value(document, "missing"));
+    }
+
+    @Test public void
+    should_reshard_with_original_key_and_uniqueness() {
+        Document sharded = new Document("_id", "test.users").append("key", new Document("email", 1)).append("unique", true);
+
+        assertEquals(new Document("shardCollection", "test.users").append("key", new Document("email", 1)).append("unique", true),
+                ChunkPreSplitter.reshardCommand(sharded, 3));
+    }
+
+    @Test public void
+    should_reshard_hashed_key_into_initial_chunks() {
+        Document sharded = new Document("_id", "test.events").append("key", new Document("_id", "hashed")).append("unique", false);
+
+        assertEquals(new Document("shardCollection", "test.events").append("key", new Document("_id", "hashed"))
+                .append("numInitialChunks", 3 * ShardedCluster.INITIAL_CHUNKS_PER_SHARD), ChunkPreSplitter.reshardCommand(sharded, 3));
+    }
+
+    @Test public void
+    should_sample_large_ndjson_files_in_mappable_chunks() throws IOException {
+        FileChannel channel = mock(FileChannel.class);
+        given(channel.size()).willReturn(NdjsonSplitter.MAX_CHUNK_SIZE * 2 + 1);
+        given(channel.read(any(ByteBuffer.class), anyLong())).willAnswer(invocation -> {
+            invocation.<ByteBuffer>getArgument(0).put((byte) '\n');
+            return 1;
+        });
+
+        List<NdjsonSplitter.Chunk> chunks = ChunkPreSplitter.sampleChunks(channel);
+
+        assertEquals(3, chunks.size());
+        for (NdjsonSplitter.Chunk chunk : chunks) {
+            assertTrue(chunk + " is too large to map", chunk.length <= NdjsonSplitter.MAX_CHUNK_SIZE);
+        }
+    }
+
+}
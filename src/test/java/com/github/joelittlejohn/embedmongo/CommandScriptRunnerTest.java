@@ -0,0 +1,189 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.WriteModel;
+
+public class CommandScriptRunnerTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private MongoDatabase database;
+    private MongoDatabase otherDatabase;
+    private MongoCollection<BsonDocument> users;
+    private MongoCollection<BsonDocument> orders;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        database = mock(MongoDatabase.class);
+        otherDatabase = mock(MongoDatabase.class);
+        users = mock(MongoCollection.class);
+        orders = mock(MongoCollection.class);
+        given(database.getCollection("users", BsonDocument.class)).willReturn(users);
+        given(database.getCollection("orders", BsonDocument.class)).willReturn(orders);
+        given(otherDatabase.getCollection("users", BsonDocument.class)).willReturn(users);
+        given(database.runCommand(any(Bson.class))).willReturn(new Document("ok", 1.0));
+        given(otherDatabase.runCommand(any(Bson.class))).willReturn(new Document("ok", 1.0));
+    }
+
+    @Test public void
+    should_send_consecutive_writes_as_one_bulk_write() throws IOException {
+        CommandScriptRunner runner = run(100,
+                "{insert: 'users', documents: [{name: 'a'}, {name: 'b'}]}",
+                "{update: 'users', updates: [{q: {name: 'a'}, u: {$set: {admin: true}}, multi: true}, {q: {name: 'b'}, u: {name: 'c'}}]}",
+                "{delete: 'users', deletes: [{q: {name: 'c'}, limit: 1}]}");
+
+        List<WriteModel<BsonDocument>> writes = bulkWrites(users, 1).get(0);
+        assertEquals(5, writes.size());
+        assertEquals(InsertOneModel.class, writes.get(0).getClass());
+        assertEquals(UpdateManyModel.class, writes.get(2).getClass());
+        assertEquals(ReplaceOneModel.class, writes.get(3).getClass());
+        assertEquals(DeleteOneModel.class, writes.get(4).getClass());
+        assertEquals(3, runner.getCommands());
+        assertEquals(1, runner.getBulkWrites());
+    }
+
+    @Test public void
+    should_split_bulk_writes_at_batch_size() throws IOException {
+        CommandScriptRunner runner = run(2, "{insert: 'users', documents: [{n: 1}, {n: 2}, {n: 3}, {n: 4}, {n: 5}]}");
+
+        List<List<WriteModel<BsonDocument>>> batches = bulkWrites(users, 3);
+        assertEquals(2, batches.get(0).size());
+        assertEquals(2, batches.get(1).size());
+        assertEquals(1, batches.get(2).size());
+        assertEquals(3, runner.getBulkWrites());
+    }
+
+    @Test public void
+    should_send_pending_writes_before_other_commands_and_collections() throws IOException {
+        run(100,
+                "{insert: 'users', documents: [{n: 1}]}",
+                "{createIndexes: 'users', indexes: [{key: {n: 1}, name: 'n_1'}]}",
+                "{insert: 'users', documents: [{n: 2}]}",
+                "{insert: 'orders', documents: [{n: 3}]}");
+
+        InOrder order = inOrder(users, database, orders);
+        order.verify(users).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        order.verify(database).runCommand(any(Bson.class));
+        order.verify(users).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        order.verify(orders).bulkWrite(anyList(), any(BulkWriteOptions.class));
+    }
+
+    @Test public void
+    should_run_commands_against_named_database() throws IOException {
+        run(100, "{insert: 'users', documents: [{n: 1}], $db: 'other'}", "{drop: 'users', $db: 'other'}");
+
+        verify(users).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        verify(otherDatabase).runCommand(eq(BsonDocument.parse("{drop: 'users'}")));
+    }
+
+    @Test public void
+    should_send_writes_with_options_a_bulk_write_cannot_carry_as_commands() throws IOException {
+        CommandScriptRunner runner = run(100,
+                "{insert: 'users', documents: [{n: 1}]}",
+                "{insert: 'users', documents: [{n: 2}], writeConcern: {w: 'majority'}}",
+                "{update: 'users', updates: [{q: {n: 'a'}, u: {$set: {n: 3}}, collation: {locale: 'en', strength: 2}}]}",
+                "{update: 'users', updates: [{q: {}, u: {$set: {'tags.$[t]': 'x'}}, arrayFilters: [{t: 'y'}]}]}",
+                "{delete: 'users', deletes: [{q: {n: 1}, limit: 0}], ordered: false}");
+
+        InOrder order = inOrder(users, database);
+        order.verify(users).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        order.verify(database).runCommand(eq(BsonDocument.parse("{insert: 'users', documents: [{n: 2}], writeConcern: {w: 'majority'}}")));
+        order.verify(database, times(2)).runCommand(any(Bson.class));
+        order.verify(users).bulkWrite(anyList(), any(BulkWriteOptions.class));
+        assertEquals(5, runner.getCommands());
+        assertEquals(2, runner.getBulkWrites());
+    }
+
+    @Test public void
+    should_fail_unbatched_write_with_write_errors() throws IOException {
+        Document duplicate = new Document("index", 0).append("code", 11000).append("errmsg", "E11000 duplicate key error");
+        given(database.runCommand(any(Bson.class))).willReturn(new Document("ok", 1.0).append("n", 0).append("writeErrors", Arrays.asList(duplicate)));
+
+        thrown.expect(MongoException.class);
+        thrown.expectMessage("Command 2 (insert) had 1 write error(s), the first at index 0: E11000 duplicate key error");
+
+        run(100, "{insert: 'users', documents: [{_id: 1}]}", "{insert: 'users', documents: [{_id: 1}], writeConcern: {w: 1}}");
+    }
+
+    @Test public void
+    should_fail_unbatched_write_with_write_concern_error() throws IOException {
+        given(database.runCommand(any(Bson.class))).willReturn(new Document("ok", 1.0).append("n", 1)
+                .append("writeConcernError", new Document("code", 100).append("errmsg", "Not enough data-bearing nodes")));
+
+        thrown.expect(MongoException.class);
+        thrown.expectMessage("Command 1 (delete) failed to satisfy its write concern: Not enough data-bearing nodes");
+
+        run(100, "{delete: 'users', deletes: [{q: {}, limit: 0}], writeConcern: {w: 3}}");
+    }
+
+    @Test public void
+    should_reject_replacement_document_with_multi() throws IOException {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("multi: true");
+
+        run(100, "{update: 'users', updates: [{q: {}, u: {name: 'a'}, multi: true}]}");
+    }
+
+    private CommandScriptRunner run(int batchSize, String... commands) throws IOException {
+        CommandScriptRunner runner = new CommandScriptRunner(name -> name.equals("other") ? otherDatabase : database, "myDB", batchSize);
+        runner.run(new JsonDocumentReader(new StringReader(String.join("\n", commands))));
+        return runner;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static List<List<WriteModel<BsonDocument>>> bulkWrites(MongoCollection<BsonDocument> collection, int count) {
+        ArgumentCaptor<List> writes = ArgumentCaptor.forClass(List.class);
+        verify(collection, times(count)).bulkWrite(writes.capture(), any(BulkWriteOptions.class));
+        return (List) writes.getAllValues();
+    }
+
+}
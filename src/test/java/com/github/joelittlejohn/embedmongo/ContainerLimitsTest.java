@@ -0,0 +1,137 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ContainerLimitsTest {
+
+    private static final long GB = 1024L * 1024 * 1024;
+
+    private static final Log LOG = new SystemStreamLog();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_read_cgroup_v2_limits() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("cgroup.controllers"), "cpu memory");
+        write(root.resolve("memory.max"), String.valueOf(2 * GB));
+        write(root.resolve("cpu.max"), "150000 100000");
+
+        ContainerLimits limits = ContainerLimits.read(root, 8);
+
+        assertEquals(2 * GB, limits.getMemoryLimit());
+        assertEquals(2, limits.processors());
+    }
+
+    @Test public void
+    should_read_cgroup_v1_limits() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("memory/memory.limit_in_bytes"), String.valueOf(4 * GB));
+        write(root.resolve("cpu/cpu.cfs_quota_us"), "400000");
+        write(root.resolve("cpu/cpu.cfs_period_us"), "100000");
+
+        ContainerLimits limits = ContainerLimits.read(root, 16);
+
+        assertEquals(4 * GB, limits.getMemoryLimit());
+        assertEquals(4, limits.processors());
+    }
+
+    @Test public void
+    should_treat_missing_and_unset_limits_as_unlimited() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("memory/memory.limit_in_bytes"), "9223372036854771712");
+        write(root.resolve("cpu/cpu.cfs_quota_us"), "-1");
+        write(root.resolve("cpu/cpu.cfs_period_us"), "100000");
+
+        ContainerLimits limits = ContainerLimits.read(root, 6);
+
+        assertEquals(ContainerLimits.UNLIMITED, limits.getMemoryLimit());
+        assertEquals(6, limits.processors());
+        assertNull(limits.wiredTigerCacheSizeGB("3.6.5", 1, LOG));
+    }
+
+    @Test public void
+    should_size_cache_to_quarter_of_memory_shared_by_instances() {
+        ContainerLimits limits = new ContainerLimits(4 * GB, ContainerLimits.UNLIMITED, 4);
+
+        assertEquals("1", limits.wiredTigerCacheSizeGB("3.6.5", 1, LOG));
+        assertEquals("0.5", limits.wiredTigerCacheSizeGB("3.6.5", 2, LOG));
+        assertEquals("0.25", limits.wiredTigerCacheSizeGB("3.6.5", 16, LOG));
+    }
+
+    @Test public void
+    should_round_cache_down_to_whole_gigabytes_before_3_4() {
+        ContainerLimits limits = new ContainerLimits(6 * GB, ContainerLimits.UNLIMITED, 4);
+
+        assertEquals("1", limits.wiredTigerCacheSizeGB("3.2.20", 1, LOG));
+        assertEquals("1.5", limits.wiredTigerCacheSizeGB("3.4.15", 1, LOG));
+    }
+
+    @Test public void
+    should_leave_cache_unset_before_3_4_when_a_gigabyte_exceeds_the_limit() {
+        ContainerLimits limits = new ContainerLimits(2 * GB, ContainerLimits.UNLIMITED, 4);
+
+        assertNull(limits.wiredTigerCacheSizeGB("3.2.20", 1, LOG));
+        assertEquals("0.5", limits.wiredTigerCacheSizeGB("3.4.15", 1, LOG));
+    }
+
+    @Test public void
+    should_treat_unreadable_limits_as_unlimited() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("memory/memory.limit_in_bytes"), "unlimited");
+        write(root.resolve("cpu/cpu.cfs_quota_us"), "");
+        write(root.resolve("cpu/cpu.cfs_period_us"), "100000");
+
+        ContainerLimits limits = ContainerLimits.read(root, 6);
+
+        assertEquals(ContainerLimits.UNLIMITED, limits.getMemoryLimit());
+        assertEquals(6, limits.processors());
+    }
+
+    @Test public void
+    should_treat_unreadable_cgroup_v2_limits_as_unlimited() throws IOException {
+        Path root = folder.getRoot().toPath();
+        write(root.resolve("cgroup.controllers"), "cpu memory");
+        write(root.resolve("memory.max"), "2G");
+        write(root.resolve("cpu.max"), "max-ish 100000");
+
+        ContainerLimits limits = ContainerLimits.read(root, 8);
+
+        assertEquals(ContainerLimits.UNLIMITED, limits.getMemoryLimit());
+        assertEquals(8, limits.processors());
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
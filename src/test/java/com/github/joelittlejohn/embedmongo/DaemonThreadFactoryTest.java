@@ -0,0 +1,39 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.Test;
+
+public class DaemonThreadFactoryTest {
+
+    @Test public void
+    should_create_numbered_daemon_threads() {
+        ThreadFactory factory = new DaemonThreadFactory("embedmongo-test");
+
+        Thread first = factory.newThread(() -> { });
+        Thread second = factory.newThread(() -> { });
+
+        assertTrue(first.isDaemon());
+        assertEquals("embedmongo-test-1", first.getName());
+        assertEquals("embedmongo-test-2", second.getName());
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DataDirectoryCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_restore_stored_data_directory() throws IOException {
+        File cacheDirectory = folder.newFolder("cache");
+        File dataDirectory = folder.newFolder("data");
+        write(new File(dataDirectory, "collection-0.wt"), "data");
+        write(new File(dataDirectory, "journal/WiredTigerLog.1"), "journal");
+        write(new File(dataDirectory, "mongod.lock"), "1234");
+        write(new File(dataDirectory, "diagnostic.data/metrics"), "metrics");
+
+        new DataDirectoryCache(cacheDirectory, "abc", dataDirectory).store();
+
+        File restoredDirectory = folder.newFolder("restored");
+        write(new File(restoredDirectory, "stale.wt"), "stale");
+        DataDirectoryCache cache = new DataDirectoryCache(cacheDirectory, "abc", restoredDirectory);
+
+        assertTrue(cache.restore());
+        assertTrue(cache.isRestored());
+        assertEquals("data", read(new File(restoredDirectory, "collection-0.wt")));
+        assertEquals("journal", read(new File(restoredDirectory, "journal/WiredTigerLog.1")));
+        assertFalse(new File(restoredDirectory, "stale.wt").exists());
+        assertFalse(new File(restoredDirectory, "mongod.lock").exists());
+        assertFalse(new File(restoredDirectory, "diagnostic.data").exists());
+    }
+
+    @Test public void
+    should_not_restore_unknown_fingerprint() throws IOException {
+        DataDirectoryCache cache = new DataDirectoryCache(folder.newFolder("cache"), "abc", folder.newFolder("data"));
+
+        assertFalse(cache.restore());
+        assertFalse(cache.isRestored());
+    }
+
+    @Test public void
+    should_snapshot_after_last_seed() throws IOException {
+        DataDirectoryCache cache = new DataDirectoryCache(folder.newFolder("cache"), "abc", folder.newFolder("data"));
+        cache.expectSeeds(2);
+
+        assertFalse(cache.seedCompleted());
+        assertTrue(cache.seedCompleted());
+        assertFalse(cache.seedCompleted());
+    }
+
+    @Test public void
+    should_change_fingerprint_when_seed_data_changes() throws IOException {
+        File importFile = folder.newFile("import.json");
+        File scripts = folder.newFolder("scripts");
+        write(importFile, "[{\"a\": 1}]");
+        write(new File(scripts, "1.js"), "db.a.insert({});");
+        MavenProject project = project(importFile, scripts);
+
+        String fingerprint = DataDirectoryCache.fingerprint(project, "3.6.5", "wiredTiger");
+        assertEquals(fingerprint, DataDirectoryCache.fingerprint(project, "3.6.5", "wiredTiger"));
+        assertNotEquals(fingerprint, DataDirectoryCache.fingerprint(project, "3.6.5", "mmapv1"));
+        assertNotEquals(fingerprint, DataDirectoryCache.fingerprint(project, "3.4.15", "wiredTiger"));
+
+        write(importFile, "[{\"a\": 2}]");
+        String changedImport = DataDirectoryCache.fingerprint(project, "3.6.5", "wiredTiger");
+        assertNotEquals(fingerprint, changedImport);
+
+        write(new File(scripts, "2.js"), "db.b.insert({});");
+        assertNotEquals(changedImport, DataDirectoryCache.fingerprint(project, "3.6.5", "wiredTiger"));
+    }
+
+    private MavenProject project(File importFile, File scripts) {
+        Xpp3Dom file = new Xpp3Dom("file");
+        file.setValue(importFile.getAbsolutePath());
+        Xpp3Dom importData = new Xpp3Dom("import");
+        importData.addChild(file);
+        Xpp3Dom imports = new Xpp3Dom("imports");
+        imports.addChild(importData);
+        Xpp3Dom importConfiguration = new Xpp3Dom("configuration");
+        importConfiguration.addChild(imports);
+
+        Xpp3Dom scriptsDirectory = new Xpp3Dom("scriptsDirectory");
+        scriptsDirectory.setValue(scripts.getAbsolutePath());
+        Xpp3Dom scriptsConfiguration = new Xpp3Dom("configuration");
+        scriptsConfiguration.addChild(scriptsDirectory);
+
+        Plugin plugin = new Plugin();
+        plugin.setGroupId(PluginExecutions.GROUP_ID);
+        plugin.setArtifactId(PluginExecutions.ARTIFACT_ID);
+        plugin.addExecution(execution("mongo-import", importConfiguration));
+        plugin.addExecution(execution("mongo-scripts", scriptsConfiguration));
+
+        Model model = new Model();
+        model.setBuild(new Build());
+        model.getBuild().addPlugin(plugin);
+        return new MavenProject(model);
+    }
+
+    private static PluginExecution execution(String goal, Xpp3Dom configuration) {
+        PluginExecution execution = new PluginExecution();
+        execution.setId(goal);
+        execution.setGoals(Collections.singletonList(goal));
+        execution.setConfiguration(configuration);
+        return execution;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+
+public class DriverImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private MongoClient client;
+    private MongoCollection<BsonDocument> collection;
+    private final List<List<BsonDocument>> inserted = new ArrayList<List<BsonDocument>>();
+    private final List<List<WriteModel<BsonDocument>>> bulkWrites = new ArrayList<List<WriteModel<BsonDocument>>>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        client = mock(MongoClient.class);
+        MongoDatabase database = mock(MongoDatabase.class);
+        collection = mock(MongoCollection.class);
+        given(client.getDatabase("test")).willReturn(database);
+        given(database.getCollection("users", BsonDocument.class)).willReturn(collection);
+
+        // the importer reuses its batch list, so copy each batch as it is written
+        willAnswer(invocation -> {
+            inserted.add(new ArrayList<BsonDocument>(invocation.<List<BsonDocument>>getArgument(0)));
+            return null;
+        }).given(collection).insertMany(anyList(), any(InsertManyOptions.class));
+        willAnswer(invocation -> {
+            bulkWrites.add(new ArrayList<WriteModel<BsonDocument>>(invocation.<List<WriteModel<BsonDocument>>>getArgument(0)));
+            return null;
+        }).given(collection).bulkWrite(anyList(), any(BulkWriteOptions.class));
+    }
+
+    @Test public void
+    should_write_full_batches_and_a_final_partial_batch() throws Exception {
+        File file = write("{_id: 1}", "{_id: 2}", "{_id: 3}", "{_id: 4}", "{_id: 5}");
+
+        long count = new DriverImporter(client, 2, 1, new SystemStreamLog()).importFile("test", ndjson(file, false, false));
+
+        assertEquals(5, count);
+        assertEquals(Arrays.asList(2, 2, 1), sizes(inserted));
+        assertEquals(new BsonInt32(5), inserted.get(2).get(0).get("_id"));
+    }
+
+    @Test public void
+    should_not_write_an_empty_final_batch() throws Exception {
+        File file = write("{_id: 1}", "{_id: 2}", "{_id: 3}", "{_id: 4}");
+
+        long count = new DriverImporter(client, 2, 1, new SystemStreamLog()).importFile("test", ndjson(file, false, false));
+
+        assertEquals(4, count);
+        assertEquals(Arrays.asList(2, 2), sizes(inserted));
+    }
+
+    @Test public void
+    should_batch_json_arrays_the_same_way() throws Exception {
+        File file = folder.newFile("users.json");
+        Files.write(file.toPath(), "[{_id: 1}, {_id: 2}, {_id: 3}]".getBytes(StandardCharsets.UTF_8));
+
+        long count = new DriverImporter(client, 2, 1, new SystemStreamLog())
+                .importFile("test", new ImportDataConfig("test", "users", file.getPath(), false, false, 10000, ImportDataConfig.FORMAT_JSON_ARRAY));
+
+        assertEquals(3, count);
+        assertEquals(Arrays.asList(2, 1), sizes(inserted));
+    }
+
+    @Test public void
+    should_drop_collection_before_writing_when_drop_on_import_is_set() throws Exception {
+        File file = write("{_id: 1}");
+
+        new DriverImporter(client, 10, 1, new SystemStreamLog()).importFile("test", ndjson(file, true, false));
+
+        InOrder order = inOrder(collection);
+        order.verify(collection).drop();
+        order.verify(collection).insertMany(anyList(), any(InsertManyOptions.class));
+    }
+
+    @Test public void
+    should_keep_collection_when_drop_on_import_is_not_set() throws Exception {
+        File file = write("{_id: 1}");
+
+        new DriverImporter(client, 10, 1, new SystemStreamLog()).importFile("test", ndjson(file, false, false));
+
+        verify(collection, never()).drop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void
+    should_replace_documents_by_id_when_upsert_on_import_is_set() throws Exception {
+        File file = write("{_id: 1, name: 'a'}", "{name: 'b'}", "{_id: 3, name: 'c'}");
+
+        long count = new DriverImporter(client, 2, 1, new SystemStreamLog()).importFile("test", ndjson(file, false, true));
+
+        assertEquals(3, count);
+        verify(collection, never()).insertMany(anyList(), any(InsertManyOptions.class));
+        assertEquals(2, bulkWrites.size());
+
+        ReplaceOneModel<BsonDocument> replace = (ReplaceOneModel<BsonDocument>) bulkWrites.get(0).get(0);
+        assertEquals(BsonDocument.parse("{_id: 1}"), replace.getFilter().toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry()));
+        assertEquals(BsonDocument.parse("{_id: 1, name: 'a'}"), replace.getReplacement());
+        assertTrue(replace.getReplaceOptions().isUpsert());
+
+        // a document without an _id cannot be matched, so it is simply inserted
+        InsertOneModel<BsonDocument> insert = (InsertOneModel<BsonDocument>) bulkWrites.get(0).get(1);
+        assertEquals(BsonDocument.parse("{name: 'b'}"), insert.getDocument());
+
+        assertTrue(bulkWrites.get(1).get(0) instanceof ReplaceOneModel);
+    }
+
+    @Test public void
+    should_fail_import_when_a_write_fails() throws Exception {
+        File file = write("{_id: 1}", "{_id: 1}");
+        willThrow(new MongoException(11000, "E11000 duplicate key error"))
+                .given(collection).insertMany(anyList(), any(InsertManyOptions.class));
+
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("Cannot import '" + file.getPath() + "': E11000 duplicate key error");
+
+        new DriverImporter(client, 10, 1, new SystemStreamLog()).importFile("test", ndjson(file, false, false));
+    }
+
+    @Test public void
+    should_fail_import_when_an_upsert_fails() throws Exception {
+        File file = write("{_id: 1}");
+        willThrow(new MongoException("not master"))
+                .given(collection).bulkWrite(anyList(), any(BulkWriteOptions.class));
+
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("not master");
+
+        new DriverImporter(client, 10, 1, new SystemStreamLog()).importFile("test", ndjson(file, false, true));
+    }
+
+    private File write(String... lines) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static ImportDataConfig ndjson(File file, boolean dropOnImport, boolean upsertOnImport) {
+        return new ImportDataConfig("test", "users", file.getPath(), dropOnImport, upsertOnImport, 10000, ImportDataConfig.FORMAT_NDJSON);
+    }
+
+    private static List<Integer> sizes(List<? extends List<?>> batches) {
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (List<?> batch : batches) {
+            sizes.add(batch.size());
+        }
+        return sizes;
+    }
+
+}
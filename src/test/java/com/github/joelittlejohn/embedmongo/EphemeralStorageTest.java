@@ -0,0 +1,58 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EphemeralStorageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_use_ephemeral_engine_where_available() {
+        assertEquals("ephemeralForTest", EphemeralStorage.storageEngine("3.2.0", "mmapv1"));
+        assertEquals("ephemeralForTest", EphemeralStorage.storageEngine("3.6.5", "mmapv1"));
+        assertEquals("ephemeralForTest", EphemeralStorage.storageEngine("6.0.1", "wiredTiger"));
+    }
+
+    @Test public void
+    should_fall_back_to_configured_engine() {
+        assertEquals("mmapv1", EphemeralStorage.storageEngine("2.6.12", "mmapv1"));
+        assertEquals("mmapv1", EphemeralStorage.storageEngine("3.0.15", "mmapv1"));
+        assertEquals("wiredTiger", EphemeralStorage.storageEngine("7.0.2", "wiredTiger"));
+        assertEquals("wiredTiger", EphemeralStorage.storageEngine("latest", "wiredTiger"));
+    }
+
+    @Test public void
+    should_pick_first_usable_tmpfs() throws IOException {
+        File missing = new File(folder.getRoot(), "missing");
+        File shm = folder.newFolder("shm");
+
+        assertEquals(shm, EphemeralStorage.tmpfsDirectory(Arrays.asList(missing, shm)));
+        assertNull(EphemeralStorage.tmpfsDirectory(Arrays.asList(missing)));
+    }
+
+}
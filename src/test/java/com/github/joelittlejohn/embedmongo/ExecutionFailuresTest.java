@@ -0,0 +1,46 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+public class ExecutionFailuresTest {
+
+    @Test public void
+    should_rethrow_mojo_failure_as_is() {
+        MojoExecutionException failure = new MojoExecutionException("Unable to import data");
+
+        assertSame(failure, ExecutionFailures.unwrap(new ExecutionException(failure), "Unable to run"));
+    }
+
+    @Test public void
+    should_wrap_other_failures() {
+        IOException failure = new IOException("Connection refused");
+
+        MojoExecutionException e = ExecutionFailures.unwrap(new ExecutionException(failure), "Unable to run");
+        assertEquals("Unable to run", e.getMessage());
+        assertSame(failure, e.getCause());
+        assertEquals("Connection refused", ExecutionFailures.unwrap(new ExecutionException(failure)).getMessage());
+    }
+
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileUtilsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_delete_directory_tree() throws IOException {
+        File root = folder.newFolder("db");
+        File journal = new File(root, "journal");
+        journal.mkdir();
+        Files.write(new File(journal, "WiredTigerLog.0000000001").toPath(), new byte[16]);
+
+        FileUtils.delete(root.toPath());
+
+        assertFalse(root.exists());
+    }
+
+    @Test public void
+    should_hex_encode_sha256() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                FileUtils.hex(FileUtils.sha256().digest("abc".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+}
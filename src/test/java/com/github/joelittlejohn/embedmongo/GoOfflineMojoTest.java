@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Test;
+
+import de.flapdoodle.embed.mongo.Command;
+import de.flapdoodle.embed.mongo.distribution.Version;
+
+public class GoOfflineMojoTest {
+
+    @Test public void
+    should_collect_distinct_versions_across_executions() {
+        Plugin plugin = new Plugin();
+        plugin.setGroupId(PluginExecutions.GROUP_ID);
+        plugin.setArtifactId(PluginExecutions.ARTIFACT_ID);
+        plugin.addExecution(execution("start-3.6", "start", configuration("3.6.5", null)));
+        plugin.addExecution(execution("start-4.0", "start-async", configuration("4.0.2", null)));
+        plugin.addExecution(execution("start-3.6-again", "start", configuration("3.6.5", null)));
+        plugin.addExecution(execution("import-3.6", "mongo-import", configuration("3.6.5", null)));
+        plugin.addExecution(execution("import-driver", "mongo-import", configuration("3.4.15", "driver")));
+
+        GoOfflineMojo mojo = new GoOfflineMojo();
+        mojo.project = project(plugin);
+        Map<String, GoOfflineMojo.Prefetch> prefetches = mojo.collectVersions();
+
+        assertEquals(2, prefetches.size());
+        assertEquals(Version.V3_6_5.asInDownloadPath(), prefetches.get("3.6.5|null").version.asInDownloadPath());
+        assertEquals(EnumSet.of(Command.MongoD, Command.MongoImport), prefetches.get("3.6.5|null").commands);
+        assertEquals(EnumSet.of(Command.MongoD), prefetches.get("4.0.2|null").commands);
+    }
+
+    private static Xpp3Dom configuration(String version, String importEngine) {
+        Xpp3Dom configuration = new Xpp3Dom("configuration");
+        Xpp3Dom versionNode = new Xpp3Dom("version");
+        versionNode.setValue(version);
+        configuration.addChild(versionNode);
+        if (importEngine != null) {
+            Xpp3Dom engineNode = new Xpp3Dom("importEngine");
+            engineNode.setValue(importEngine);
+            configuration.addChild(engineNode);
+        }
+        return configuration;
+    }
+
+    private static PluginExecution execution(String id, String goal, Xpp3Dom configuration) {
+        PluginExecution execution = new PluginExecution();
+        execution.setId(id);
+        execution.setGoals(Collections.singletonList(goal));
+        execution.setConfiguration(configuration);
+        return execution;
+    }
+
+    private static MavenProject project(Plugin plugin) {
+        Model model = new Model();
+        model.setBuild(new Build());
+        model.getBuild().addPlugin(plugin);
+        return new MavenProject(model);
+    }
+
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImportSchedulerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_order_largest_files_first() throws IOException {
+        ImportDataConfig small = importOf(10);
+        ImportDataConfig large = importOf(1000);
+        ImportDataConfig medium = importOf(100);
+
+        assertEquals(Arrays.asList(large, medium, small), ImportScheduler.largestFirst(Arrays.asList(small, large, medium)));
+    }
+
+    @Test public void
+    should_split_workers_between_imports_running_side_by_side() {
+        ImportScheduler scheduler = new ImportScheduler(8);
+
+        assertEquals(8, scheduler.workersPerImport(1));
+        assertEquals(4, scheduler.workersPerImport(2));
+        assertEquals(2, scheduler.workersPerImport(3));
+        assertEquals(1, scheduler.workersPerImport(8));
+        assertEquals(1, scheduler.workersPerImport(20));
+    }
+
+    @Test public void
+    should_not_run_more_imports_than_concurrency_allows() throws Exception {
+        List<ImportDataConfig> imports = new ArrayList<ImportDataConfig>();
+        for (int i = 0; i < 20; i++) {
+            imports.add(importOf(i));
+        }
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+
+        new ImportScheduler(3).runAll(imports, importData -> {
+            int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            Thread.sleep(5);
+            running.decrementAndGet();
+            completed.incrementAndGet();
+        });
+
+        assertEquals(20, completed.get());
+        assertTrue("at most 3 imports should run at once but saw " + maxRunning.get(), maxRunning.get() <= 3);
+    }
+
+    @Test public void
+    should_cancel_pending_imports_after_failure() throws Exception {
+        final ImportDataConfig failing = importOf(1000);
+        List<ImportDataConfig> imports = new ArrayList<ImportDataConfig>();
+        imports.add(failing);
+        for (int i = 0; i < 10; i++) {
+            imports.add(importOf(i));
+        }
+
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AtomicInteger started = new AtomicInteger();
+
+        try {
+            new ImportScheduler(2).runAll(imports, importData -> {
+                started.incrementAndGet();
+                if (importData == failing) {
+                    running.await();
+                    throw new MojoExecutionException("Cannot import '" + importData.getFile() + "'");
+                }
+                running.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+            });
+            fail("Expected the failing import to fail the run");
+        } catch (MojoExecutionException e) {
+            assertEquals("Cannot import '" + failing.getFile() + "'", e.getMessage());
+        }
+
+        assertTrue("running import should be interrupted", interrupted.await(10, TimeUnit.SECONDS));
+        // the worker freed by the failure may pick up one more import before it is cancelled
+        assertTrue("queued imports should not start but " + started.get() + " did", started.get() <= 3);
+    }
+
+    private ImportDataConfig importOf(int size) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), new byte[size]);
+        return new ImportDataConfig("db", "collection", file.getAbsolutePath(), true, true, 1000);
+    }
+
+}
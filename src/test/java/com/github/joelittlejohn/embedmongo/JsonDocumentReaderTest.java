@@ -0,0 +1,154 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.bson.BsonDocument;
+import org.bson.json.JsonParseException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class JsonDocumentReaderTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test public void
+    should_read_documents_from_json_array() throws IOException {
+        JsonDocumentReader reader = reader("[ {\"a\": 1}, {\"b\": {\"c\": [1, 2]}} ,{\"d\": 3} ]");
+
+        assertEquals(BsonDocument.parse("{a: 1}"), reader.next());
+        assertEquals(BsonDocument.parse("{b: {c: [1, 2]}}"), reader.next());
+        assertEquals(BsonDocument.parse("{d: 3}"), reader.next());
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test public void
+    should_read_documents_that_follow_one_another() throws IOException {
+        JsonDocumentReader reader = reader("{\"a\": 1}\n{\"a\": 2}\n\n{\"a\": 3}\n");
+
+        assertEquals(BsonDocument.parse("{a: 1}"), reader.next());
+        assertEquals(BsonDocument.parse("{a: 2}"), reader.next());
+        assertEquals(BsonDocument.parse("{a: 3}"), reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test public void
+    should_skip_comment_lines_between_documents() throws IOException {
+        JsonDocumentReader reader = reader("// @database other\n// @dependsOn a.json\n{\"a\": 1}\n// next\n{\"a\": 2}");
+
+        assertEquals(BsonDocument.parse("{\"a\": 1}"), reader.next());
+        assertEquals(BsonDocument.parse("{\"a\": 2}"), reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test public void
+    should_ignore_braces_inside_strings() throws IOException {
+        JsonDocumentReader reader = reader("[{\"a\": \"}{\\\"}\", \"b\": '}'}]");
+
+        assertEquals(BsonDocument.parse("{a: '}{\"}', b: '}'}"), reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test public void
+    should_ignore_braces_inside_regex_literals() throws IOException {
+        JsonDocumentReader reader = reader("[{\"a\": /^}\\/{/i, \"b\": 1}, {\"c\": 2}]");
+
+        BsonDocument document = reader.next();
+        assertEquals("^}\\/{", document.getRegularExpression("a").getPattern());
+        assertEquals(1, document.getInt32("b").getValue());
+        assertEquals(BsonDocument.parse("{c: 2}"), reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test public void
+    should_fail_on_documents_not_separated_in_array() throws IOException {
+        JsonDocumentReader reader = reader("[{\"a\": 1} {\"a\": 2}]");
+        reader.next();
+
+        thrown.expect(JsonParseException.class);
+        thrown.expectMessage("Expected ',' or ']'");
+        reader.next();
+    }
+
+    @Test public void
+    should_fail_on_trailing_comma_in_array() throws IOException {
+        JsonDocumentReader reader = reader("[{\"a\": 1},]");
+        reader.next();
+
+        thrown.expect(JsonParseException.class);
+        reader.next();
+    }
+
+    @Test public void
+    should_read_extended_json() throws IOException {
+        JsonDocumentReader reader = reader("[{\"_id\": {\"$oid\": \"5b0d6d4b9d1fa25e8c2b3a10\"}, \"n\": {\"$numberLong\": \"7\"}}]");
+
+        BsonDocument document = reader.next();
+        assertEquals("5b0d6d4b9d1fa25e8c2b3a10", document.getObjectId("_id").getValue().toHexString());
+        assertEquals(7L, document.getInt64("n").getValue());
+    }
+
+    @Test public void
+    should_read_empty_input() throws IOException {
+        assertNull(reader("").next());
+        assertNull(reader(" [ ] ").next());
+    }
+
+    @Test public void
+    should_fail_on_unclosed_array() throws IOException {
+        JsonDocumentReader reader = reader("[{\"a\": 1}");
+        reader.next();
+
+        thrown.expect(JsonParseException.class);
+        reader.next();
+    }
+
+    @Test public void
+    should_fail_on_values_that_are_not_documents() throws IOException {
+        thrown.expect(JsonParseException.class);
+        thrown.expectMessage("Expected a JSON document");
+
+        reader("[1, 2]").next();
+    }
+
+    @Test public void
+    should_stream_file() throws IOException {
+        File file = new File("src/test/resources/example4/src/main/test/mongo_data/tiny_zips.json");
+        int count = 0;
+
+        try (JsonDocumentReader reader = JsonDocumentReader.open(file)) {
+            while (reader.next() != null) {
+                count++;
+            }
+        }
+
+        assertEquals(33, count);
+    }
+
+    private static JsonDocumentReader reader(String json) {
+        return new JsonDocumentReader(new StringReader(json));
+    }
+
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCompressor;
+
+public class MongoClientRegistryTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test public void
+    should_build_client_options() {
+        MongoClientOptions options = MongoClientRegistry.options(16, 2000, "snappy, zlib");
+
+        assertEquals(16, options.getConnectionsPerHost());
+        assertEquals(2000, options.getConnectTimeout());
+        assertEquals(asList(MongoCompressor.createSnappyCompressor().getName(), MongoCompressor.createZlibCompressor().getName()),
+                asList(options.getCompressorList().get(0).getName(), options.getCompressorList().get(1).getName()));
+        assertTrue(MongoClientRegistry.options(16, 2000, null).getCompressorList().isEmpty());
+    }
+
+    @Test public void
+    should_reject_unknown_compressor() {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Unknown compressor 'lz4'");
+
+        MongoClientRegistry.options(16, 2000, "zlib,lz4");
+    }
+
+    @Test public void
+    should_share_one_client_per_server() {
+        MongoClientRegistry registry = new MongoClientRegistry(MongoClientRegistry.options(4, 1000, null));
+        try {
+            MongoClient client = registry.get("localhost", 27017);
+
+            assertSame(client, registry.get("localhost", 27017));
+            assertNotSame(client, registry.get("localhost", 27018));
+        } finally {
+            registry.close();
+        }
+    }
+
+    @Test public void
+    should_not_hand_out_clients_once_closed() {
+        MongoClientRegistry registry = new MongoClientRegistry(MongoClientRegistry.options(4, 1000, null));
+        registry.get("localhost", 27017);
+        registry.close();
+
+        thrown.expect(IllegalStateException.class);
+
+        registry.get("localhost", 27017);
+    }
+
+}
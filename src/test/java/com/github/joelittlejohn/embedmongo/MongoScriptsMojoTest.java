@@ -18,6 +18,8 @@ package com.github.joelittlejohn.embedmongo;
 import static org.junit.Assert.fail;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -33,6 +35,7 @@ import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
 import org.mockito.junit.MockitoJUnitRunner;
 import com.mongodb.CommandResult;
 import com.mongodb.DB;
@@ -86,6 +89,21 @@ public class MongoScriptsMojoTest {
         new MongoScriptsMojoForTest(rootFolderWithError, PORT, "myDB", database, null).execute();
     }
 
+    @Test public void
+    should_execute_each_file_once_in_name_order() throws IOException, MojoFailureException, MojoExecutionException {
+        File scripts = createSchemaFolder.newFolder("ordered");
+        write(new File(scripts, "2-indexes.js"), "db.users.createIndex({ email: 1 });\n");
+        write(new File(scripts, "1-users.js"), "db.users.insert({ email: 'joe' });\n");
+        DB database = mock(DB.class);
+        given(database.doEval(anyString(), ArgumentMatchers.<Object>any())).willReturn(new EmbedMongoDB("myDB").doEval(""));
+
+        new MongoScriptsMojoForTest(scripts, PORT, "myDB", database, null).execute();
+
+        InOrder order = inOrder(database);
+        order.verify(database).doEval(eq("(function() {db.users.insert({ email: 'joe' });\n})();"), ArgumentMatchers.<Object>any());
+        order.verify(database).doEval(eq("(function() {db.users.createIndex({ email: 1 });\n})();"), ArgumentMatchers.<Object>any());
+    }
+
     @Test public void
     should_not_accept_invalid_charset_encoding() throws IOException, MojoFailureException, MojoExecutionException {
         initFolder();
@@ -97,6 +115,15 @@ public class MongoScriptsMojoTest {
         new MongoScriptsMojoForTest(rootFolder, PORT, "myDB", invalidScriptCharsetEncoding).execute();
     }
 
+    private static void write(File file, String content) throws IOException {
+        BufferedWriter out = new BufferedWriter(new FileWriter(file));
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
     private void initFolder() throws IOException {
         File instructionsFile = createSchemaFolder.newFile();
         BufferedWriter out = null;
@@ -142,7 +169,7 @@ public class MongoScriptsMojoTest {
         }
 
         @Override
-        DB connectToMongoAndGetDatabase() {
+        DB connectToMongoAndGetDatabase(String name) {
             return database;
         }
     }
@@ -0,0 +1,112 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MongodDaemonTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_identify_daemons_by_configuration() throws IOException {
+        File directory = folder.newFolder("daemons");
+
+        assertEquals(MongodDaemon.forConfiguration(directory, "3.6.5|27017").getHash(), MongodDaemon.forConfiguration(directory, "3.6.5|27017").getHash());
+        assertNotEquals(MongodDaemon.forConfiguration(directory, "3.6.5|27017").getHash(), MongodDaemon.forConfiguration(directory, "4.0.2|27017").getHash());
+    }
+
+    @Test public void
+    should_read_saved_state() throws IOException {
+        File directory = folder.newFolder("daemons");
+        MongodDaemon daemon = MongodDaemon.forConfiguration(directory, "3.6.5|27017");
+        try (Closeable lock = daemon.lock()) {
+            daemon.save(1234, "localhost", 27017, "3.6.5");
+        }
+
+        MongodDaemon loaded = MongodDaemon.all(directory).get(0);
+
+        assertEquals(1, MongodDaemon.all(directory).size());
+        assertTrue(loaded.load());
+        assertEquals(daemon.getHash(), loaded.getHash());
+        assertEquals(1234, loaded.getPid());
+        assertEquals("localhost", loaded.getHost());
+        assertEquals(27017, loaded.getPort());
+        assertEquals("3.6.5", loaded.getVersion());
+    }
+
+    @Test public void
+    should_ignore_missing_or_unreadable_state() throws IOException {
+        File directory = folder.newFolder("daemons");
+        MongodDaemon daemon = new MongodDaemon(directory, "abc");
+
+        assertFalse(daemon.load());
+
+        Files.write(daemon.getStateFile().toPath(), "{\"pid\": ".getBytes(StandardCharsets.UTF_8));
+        assertFalse(daemon.load());
+    }
+
+    @Test public void
+    should_skip_seeding_once_recorded() throws IOException {
+        File directory = folder.newFolder("daemons");
+        MongodDaemon daemon = new MongodDaemon(directory, "abc");
+        daemon.save(1234, "localhost", 27017, "3.6.5");
+        daemon.expectSeeds("seeds", 2);
+
+        assertFalse(daemon.isSeeded());
+        assertFalse(daemon.seedCompleted());
+        assertTrue(daemon.seedCompleted());
+
+        MongodDaemon later = new MongodDaemon(directory, "abc");
+        assertTrue(later.load());
+        later.expectSeeds("seeds", 2);
+        assertTrue(later.isSeeded());
+        assertFalse(later.seedCompleted());
+
+        later.expectSeeds("changed seeds", 1);
+        assertFalse(later.isSeeded());
+    }
+
+    @Test public void
+    should_delete_state_and_home() throws IOException {
+        File directory = folder.newFolder("daemons");
+        MongodDaemon daemon = new MongodDaemon(directory, "abc");
+        daemon.save(1234, "localhost", 27017, "3.6.5");
+        Files.createDirectories(daemon.getDataDirectory().toPath());
+        Files.write(daemon.getLogFile().toPath(), "log".getBytes(StandardCharsets.UTF_8));
+
+        daemon.delete();
+
+        assertFalse(daemon.getStateFile().exists());
+        assertFalse(daemon.getHome().exists());
+        assertTrue(MongodDaemon.all(directory).isEmpty());
+    }
+
+}
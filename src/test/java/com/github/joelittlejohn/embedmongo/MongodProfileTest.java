@@ -0,0 +1,57 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+public class MongodProfileTest {
+
+    @Test public void
+    should_expand_profile_for_version_and_storage_engine() {
+        assertEquals(asList("--wiredTigerCacheSizeGB=0.25", "--oplogSize=64", "--setParameter=diagnosticDataCollectionEnabled=false"),
+                MongodProfile.LOW_MEMORY.args("3.6.5", "wiredTiger", new SystemStreamLog()));
+        assertEquals(asList("--wiredTigerCacheSizeGB=1", "--oplogSize=64"),
+                MongodProfile.LOW_MEMORY.args("3.0.15", "wiredTiger", new SystemStreamLog()));
+    }
+
+    @Test public void
+    should_drop_options_the_storage_engine_does_not_have() {
+        assertEquals(Collections.singletonList("--setParameter=diagnosticDataCollectionEnabled=false"),
+                MongodProfile.FASTEST_TEST.args("3.6.5", "mmapv1", new SystemStreamLog()));
+    }
+
+    @Test public void
+    should_keep_journal_on_where_version_cannot_turn_it_off() {
+        assertFalse(MongodProfile.FASTEST_TEST.journal("4.0.2", true));
+        assertTrue(MongodProfile.FASTEST_TEST.journal("6.1.0", true));
+        assertTrue(MongodProfile.DURABLE.journal("3.6.5", false));
+        assertFalse(MongodProfile.NO_TABLE_SCAN.journal("3.6.5", false));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void
+    should_reject_unknown_profile() {
+        MongodProfile.forName("fastest");
+    }
+
+}
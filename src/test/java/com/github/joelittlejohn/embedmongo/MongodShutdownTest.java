@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.flapdoodle.embed.mongo.MongodProcess;
+import de.flapdoodle.embed.mongo.config.IMongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+
+public class MongodShutdownTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_wait_on_every_process_concurrently() throws IOException {
+        MongodProcess first = exitedProcess();
+        MongodProcess second = exitedProcess();
+
+        new MongodShutdown(1000, 1000, new SystemStreamLog()).stopAll(Arrays.asList(first, second));
+
+        verify(first).isProcessRunning();
+        verify(second).isProcessRunning();
+    }
+
+    @Test public void
+    should_delete_directory_in_background() throws IOException {
+        File directory = folder.newFolder("data");
+        new File(directory, "nested").mkdir();
+        new File(directory, "nested/collection.wt").createNewFile();
+
+        BackgroundDeletion.delete(directory, new SystemStreamLog());
+        BackgroundDeletion.awaitCompletion();
+
+        assertFalse(directory.exists());
+    }
+
+    private static MongodProcess exitedProcess() throws IOException {
+        IMongodConfig config = mock(IMongodConfig.class);
+        when(config.net()).thenReturn(new Net("localhost", closedPort(), false));
+
+        MongodProcess process = mock(MongodProcess.class);
+        when(process.getConfig()).thenReturn(config);
+        when(process.isProcessRunning()).thenReturn(false);
+        return process;
+    }
+
+    private static int closedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+}
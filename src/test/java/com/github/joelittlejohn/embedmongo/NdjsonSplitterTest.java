@@ -0,0 +1,104 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NdjsonSplitterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_not_split_small_files() {
+        assertEquals(1, NdjsonSplitter.chunkCount(0, 8));
+        assertEquals(1, NdjsonSplitter.chunkCount(1024, 8));
+        assertEquals(2, NdjsonSplitter.chunkCount(NdjsonSplitter.MIN_CHUNK_SIZE + 1, 8));
+    }
+
+    @Test public void
+    should_split_large_files_across_workers() {
+        assertEquals(8, NdjsonSplitter.chunkCount(NdjsonSplitter.MIN_CHUNK_SIZE * 100, 8));
+        assertEquals(6, NdjsonSplitter.chunkCount(NdjsonSplitter.MAX_CHUNK_SIZE * 5 + 1, 2));
+    }
+
+    @Test public void
+    should_split_on_line_boundaries() throws IOException, MojoExecutionException {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            lines.add("{\"_id\": " + i + ", \"name\": \"" + new String(new char[i % 37]).replace('\0', 'x') + "\"}");
+        }
+        File file = folder.newFile();
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<NdjsonSplitter.Chunk> chunks = NdjsonSplitter.split(channel, 7);
+            assertEquals(7, chunks.size());
+
+            long expectedStart = 0;
+            for (NdjsonSplitter.Chunk chunk : chunks) {
+                assertEquals(expectedStart, chunk.start);
+                if (chunk.start > 0) {
+                    ByteBuffer previous = ByteBuffer.allocate(1);
+                    channel.read(previous, chunk.start - 1);
+                    assertEquals('\n', previous.get(0));
+                }
+                expectedStart = chunk.start + chunk.length;
+            }
+            assertEquals(channel.size(), expectedStart);
+
+            List<String> read = new ArrayList<String>();
+            for (NdjsonSplitter.Chunk chunk : chunks) {
+                NdjsonSplitter.readLines(channel, chunk, read::add);
+            }
+            assertEquals(lines, read);
+        }
+    }
+
+    @Test public void
+    should_skip_blank_lines_and_carriage_returns() throws IOException, MojoExecutionException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), "{\"a\": 1}\r\n\r\n  \n{\"a\": 2}".getBytes(StandardCharsets.UTF_8));
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<String> read = new ArrayList<String>();
+            for (NdjsonSplitter.Chunk chunk : NdjsonSplitter.split(channel, 3)) {
+                NdjsonSplitter.readLines(channel, chunk, read::add);
+            }
+
+            List<String> expected = new ArrayList<String>();
+            expected.add("{\"a\": 1}");
+            expected.add("{\"a\": 2}");
+            assertEquals(expected, read);
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PortAllocatorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_not_hand_out_leased_port_twice() throws IOException {
+        int port = freePort();
+        PortAllocator allocator = new PortAllocator(folder.getRoot(), port, port + 1);
+
+        try (PortAllocator.Lease first = allocator.reserve();
+             PortAllocator.Lease second = allocator.reserve()) {
+            assertNotEquals(first.getPort(), second.getPort());
+        }
+    }
+
+    @Test public void
+    should_hand_out_port_again_once_released() throws IOException {
+        int port = freePort();
+        PortAllocator allocator = new PortAllocator(folder.getRoot(), port, port);
+
+        allocator.reserve().close();
+
+        try (PortAllocator.Lease lease = allocator.reserve()) {
+            assertEquals(port, lease.getPort());
+        }
+    }
+
+    @Test(expected = IOException.class) public void
+    should_skip_port_bound_by_another_process() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            assertFalse(PortAllocator.isFree(socket.getLocalPort()));
+            new PortAllocator(folder.getRoot(), socket.getLocalPort(), socket.getLocalPort()).reserve();
+        }
+    }
+
+    @Test public void
+    should_lease_port_suggested_by_operating_system_without_range() throws IOException {
+        try (PortAllocator.Lease lease = PortAllocator.forRange(folder.getRoot(), null).reserve()) {
+            assertTrue(lease.getPort() > 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void
+    should_reject_reversed_port_range() {
+        PortAllocator.forRange(folder.getRoot(), "27199-27100");
+    }
+
+    @Test public void
+    should_recognise_address_in_use_failures() {
+        assertTrue(StartMojo.isAddressInUse(new IOException("Could not start process: ERROR: listen(): bind() failed errno:98 Address already in use for socket: 0.0.0.0:27017")));
+        assertFalse(StartMojo.isAddressInUse(new IOException("Could not start process: error command line")));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort() < 65535 ? socket.getLocalPort() : socket.getLocalPort() - 1;
+        }
+    }
+
+}
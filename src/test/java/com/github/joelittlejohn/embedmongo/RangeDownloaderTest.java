@@ -0,0 +1,253 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.config.store.IDownloadConfig;
+import de.flapdoodle.embed.process.config.store.IPackageResolver;
+import de.flapdoodle.embed.process.config.store.ITimeoutConfig;
+import de.flapdoodle.embed.process.config.store.NoProxyFactory;
+import de.flapdoodle.embed.process.distribution.BitSize;
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.distribution.Platform;
+import de.flapdoodle.embed.process.io.directories.FixedPath;
+import de.flapdoodle.embed.process.io.progress.IProgressListener;
+
+public class RangeDownloaderTest {
+
+    private static final Distribution DISTRIBUTION = new Distribution(Version.V3_6_5, Platform.Linux, BitSize.B64);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] archive = new byte[10 * 1024 * 1024];
+    private final List<String> ranges = new CopyOnWriteArrayList<String>();
+    private final AtomicInteger interruptions = new AtomicInteger();
+    private final AtomicInteger checksumFailures = new AtomicInteger();
+    private volatile boolean acceptRanges = true;
+    private volatile String checksum;
+    private HttpServer server;
+    private IDownloadConfig config;
+
+    @Before
+    public void startServer() throws Exception {
+        new Random(42).nextBytes(archive);
+        checksum = FileUtils.hex(MessageDigest.getInstance("SHA-256").digest(archive)) + "  mongodb.tgz\n";
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/mongodb.tgz", this::serveArchive);
+        server.createContext("/mongodb.tgz.sha256", this::serveChecksum);
+        server.start();
+
+        config = mock(IDownloadConfig.class);
+        IPackageResolver resolver = mock(IPackageResolver.class);
+        ITimeoutConfig timeouts = mock(ITimeoutConfig.class);
+        given(resolver.getPath(any(Distribution.class))).willReturn("mongodb.tgz");
+        given(config.getPackageResolver()).willReturn(resolver);
+        given(config.getDownloadPath()).willReturn(distribution -> "http://localhost:" + server.getAddress().getPort() + "/");
+        given(config.getArtifactStorePath()).willReturn(new FixedPath(folder.getRoot().getAbsolutePath()));
+        given(config.getProgressListener()).willReturn(mock(IProgressListener.class));
+        given(config.getTimeoutConfig()).willReturn(timeouts);
+        given(config.getUserAgent()).willReturn("embedmongo-test");
+        given(config.proxyFactory()).willReturn(new NoProxyFactory());
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test public void
+    should_download_ranges_in_parallel() throws IOException {
+        File file = new RangeDownloader(4).download(config, DISTRIBUTION);
+
+        assertArrayEquals(archive, Files.readAllBytes(file.toPath()));
+        assertEquals(2, ranges.size());
+        assertFalse(new File(folder.getRoot(), ".partial/mongodb.tgz").exists());
+    }
+
+    @Test public void
+    should_resume_interrupted_range() throws IOException {
+        interruptions.set(1);
+
+        File file = new RangeDownloader(1).download(config, DISTRIBUTION);
+
+        assertArrayEquals(archive, Files.readAllBytes(file.toPath()));
+        assertEquals(2, ranges.size());
+        assertTrue(ranges.get(1).matches("bytes=[1-9][0-9]*-" + (archive.length - 1)));
+    }
+
+    @Test public void
+    should_download_whole_file_when_server_ignores_ranges() throws IOException {
+        acceptRanges = false;
+
+        File file = new RangeDownloader(4).download(config, DISTRIBUTION);
+
+        assertArrayEquals(archive, Files.readAllBytes(file.toPath()));
+        assertEquals(1, ranges.size());
+    }
+
+    @Test public void
+    should_reject_archive_not_matching_published_checksum() {
+        checksum = "0000  mongodb.tgz";
+
+        try {
+            new RangeDownloader(4).download(config, DISTRIBUTION);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("SHA-256"));
+        }
+    }
+
+    @Test public void
+    should_not_resume_partial_files_split_at_other_offsets() throws IOException {
+        interruptions.set(RangeDownloader.ATTEMPTS);
+        try {
+            new RangeDownloader(1).download(config, DISTRIBUTION);
+            fail();
+        } catch (IOException e) {
+            assertTrue(new File(folder.getRoot(), ".partial/mongodb.tgz/0").exists());
+        }
+
+        checksum = "";
+        File file = new RangeDownloader(4).download(config, DISTRIBUTION);
+
+        assertArrayEquals(archive, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test public void
+    should_reject_partial_file_not_matching_its_range() throws IOException {
+        File partial = folder.newFolder("partial");
+        Files.write(new File(partial, "0").toPath(), new byte[6]);
+        Files.write(new File(partial, "1").toPath(), new byte[4]);
+
+        try {
+            RangeDownloader.join(partial.toPath(), RangeDownloader.ranges(10, 1), folder.newFile("archive").toPath());
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("bytes 0-9"));
+        }
+        List<long[]> split = Arrays.asList(new long[] {0, 5}, new long[] {6, 9});
+        RangeDownloader.join(partial.toPath(), split, folder.newFile("joined").toPath());
+    }
+
+    @Test public void
+    should_retry_published_checksum() {
+        checksumFailures.set(RangeDownloader.ATTEMPTS - 1);
+        checksum = "0000  mongodb.tgz";
+
+        try {
+            new RangeDownloader(4).download(config, DISTRIBUTION);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("SHA-256"));
+        }
+    }
+
+    @Test public void
+    should_split_into_ranges_of_minimum_size() {
+        assertEquals(1, RangeDownloader.ranges(RangeDownloader.MIN_RANGE_SIZE - 1, 4).size());
+        assertEquals(3, RangeDownloader.ranges(3 * RangeDownloader.MIN_RANGE_SIZE + 1, 4).size());
+
+        List<long[]> split = RangeDownloader.ranges(10, 1);
+        assertEquals(0, split.get(0)[0]);
+        assertEquals(9, split.get(0)[1]);
+        assertEquals(-1, RangeDownloader.ranges(-1, 4).get(0)[1]);
+    }
+
+    private void serveArchive(HttpExchange exchange) throws IOException {
+        if (acceptRanges) {
+            exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        }
+        exchange.getResponseHeaders().set("ETag", "\"v1\"");
+
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(archive.length));
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        ranges.add(String.valueOf(range));
+        int first = 0;
+        int last = archive.length - 1;
+        int status = 200;
+        if (range != null && acceptRanges) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            first = Integer.parseInt(bounds[0]);
+            last = bounds[1].isEmpty() ? archive.length - 1 : Integer.parseInt(bounds[1]);
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + archive.length);
+        }
+
+        int length = last - first + 1;
+        exchange.sendResponseHeaders(status, length);
+        OutputStream out = exchange.getResponseBody();
+        if (interruptions.getAndDecrement() > 0) {
+            out.write(archive, first, length / 2);
+            out.flush();
+            exchange.close();
+            return;
+        }
+        out.write(archive, first, length);
+        exchange.close();
+    }
+
+    private void serveChecksum(HttpExchange exchange) throws IOException {
+        if (checksumFailures.getAndDecrement() > 0) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+        byte[] body = checksum.getBytes(StandardCharsets.US_ASCII);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bson.Document;
+import org.junit.Test;
+
+public class ReplicaSetTest {
+
+    @Test public void
+    should_prefer_first_member_as_primary() {
+        Document config = new ReplicaSet("rs0", asList("localhost:27017", "localhost:27018")).config();
+
+        assertEquals("rs0", config.getString("_id"));
+        List<?> members = (List<?>) config.get("members");
+        assertEquals(new Document("_id", 0).append("host", "localhost:27017").append("priority", 2), members.get(0));
+        assertEquals(new Document("_id", 1).append("host", "localhost:27018").append("priority", 1), members.get(1));
+    }
+
+    @Test public void
+    should_mark_config_server_replica_set() {
+        ReplicaSet set = new ReplicaSet("configRS", asList("localhost:27019"), true);
+
+        assertEquals(Boolean.TRUE, set.config().getBoolean("configsvr"));
+        assertEquals("configRS/localhost:27019", set.seedList());
+    }
+
+    @Test public void
+    should_build_connection_string_with_all_members() {
+        ReplicaSet set = new ReplicaSet("rs0", asList("localhost:27017", "localhost:27018", "localhost:27019"));
+
+        assertEquals("mongodb://localhost:27017,localhost:27018,localhost:27019/?replicaSet=rs0", set.connectionString());
+    }
+
+    @Test public void
+    should_wait_for_first_member_to_be_primary() throws Exception {
+        final List<String> polled = new ArrayList<String>();
+        ReplicaSet set = new ReplicaSet("rs0", asList("localhost:27017", "localhost:27018")) {
+            @Override
+            boolean isPrimary(String host) {
+                polled.add(host);
+                // the second member wins the first election, the first takes over later
+                return polled.size() > 2;
+            }
+        };
+
+        set.awaitPrimary(10000);
+
+        assertEquals("localhost:27017", set.getPrimary());
+        assertEquals(27017, set.getPrimaryPort());
+        assertEquals(asList("localhost:27017", "localhost:27017", "localhost:27017"), polled);
+    }
+
+    @Test(expected = MojoExecutionException.class) public void
+    should_fail_when_first_member_does_not_become_primary() throws Exception {
+        new ReplicaSet("rs0", asList("localhost:27017", "localhost:27018")) {
+            @Override
+            boolean isPrimary(String host) {
+                return !host.equals(getPrimary());
+            }
+        }.awaitPrimary(100);
+    }
+
+}
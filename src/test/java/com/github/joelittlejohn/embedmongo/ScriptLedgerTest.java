@@ -0,0 +1,131 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.UpdateOptions;
+
+public class ScriptLedgerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test public void
+    should_only_run_new_scripts() throws IOException, MojoFailureException {
+        Script applied = script("1-users.js", "db.users.insert({});");
+        Script added = script("2-orders.js", "db.orders.insert({});");
+        ScriptLedger ledger = ledger(applied);
+
+        assertEquals(new LinkedHashSet<Script>(Arrays.asList(added)), ledger.pending(Arrays.asList(applied, added), ScriptLedger.ChangePolicy.FAIL, new SystemStreamLog()));
+    }
+
+    @Test public void
+    should_fail_on_changed_script() throws IOException, MojoFailureException {
+        Script changed = script("1-users.js", "db.users.insert({});");
+        ScriptLedger ledger = ledger(changed);
+        write(changed, "db.users.insert({ changed: true });");
+
+        thrown.expect(MojoFailureException.class);
+        thrown.expectMessage("Script '1-users.js' changed since it was applied");
+
+        ledger.pending(Arrays.asList(changed), ScriptLedger.ChangePolicy.FAIL, new SystemStreamLog());
+    }
+
+    @Test public void
+    should_rerun_or_leave_out_changed_script() throws IOException, MojoFailureException {
+        Script changed = script("1-users.js", "db.users.insert({});");
+        ScriptLedger ledger = ledger(changed);
+        write(changed, "db.users.insert({ changed: true });");
+        List<Script> scripts = Arrays.asList(changed);
+
+        assertEquals(new LinkedHashSet<Script>(scripts), ledger.pending(scripts, ScriptLedger.ChangePolicy.RERUN, new SystemStreamLog()));
+        assertEquals(emptyList(), Arrays.asList(ledger.pending(scripts, ScriptLedger.ChangePolicy.WARN, new SystemStreamLog()).toArray()));
+    }
+
+    @Test public void
+    should_record_applied_script_with_checksum() throws IOException, MojoFailureException {
+        @SuppressWarnings("unchecked")
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        Script script = script("1-users.js", "db.users.insert({});");
+        ScriptLedger ledger = new ScriptLedger(collection, new HashMap<String, String>());
+        ledger.pending(Arrays.asList(script), ScriptLedger.ChangePolicy.FAIL, new SystemStreamLog());
+
+        ledger.record(script);
+
+        ArgumentCaptor<Bson> filter = ArgumentCaptor.forClass(Bson.class);
+        ArgumentCaptor<Bson> update = ArgumentCaptor.forClass(Bson.class);
+        verify(collection).updateOne(filter.capture(), update.capture(), any(UpdateOptions.class));
+        assertEquals(new BsonString("1-users.js"), render(filter.getValue()).get("_id"));
+        assertEquals(new BsonString(ScriptLedger.checksum(script.getFile())), render(update.getValue()).getDocument("$set").get("checksum"));
+    }
+
+    private static BsonDocument render(Bson bson) {
+        return bson.toBsonDocument(Document.class, MongoClient.getDefaultCodecRegistry());
+    }
+
+    private ScriptLedger ledger(Script... applied) throws IOException {
+        Map<String, String> checksums = new HashMap<String, String>();
+        for (Script script : applied) {
+            checksums.put(script.getName(), ScriptLedger.checksum(script.getFile()));
+        }
+        @SuppressWarnings("unchecked")
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        return new ScriptLedger(collection, checksums);
+    }
+
+    private Script script(String name, String content) throws IOException {
+        Script script = new Script(new File(folder.getRoot(), name), null, emptyList());
+        write(script, content);
+        return script;
+    }
+
+    private static void write(Script script, String content) throws IOException {
+        Files.write(script.getFile().toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
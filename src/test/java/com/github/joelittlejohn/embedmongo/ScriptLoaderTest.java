@@ -0,0 +1,88 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.bson.BsonDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class ScriptLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test public void
+    should_load_scripts_in_charset_with_trailing_line_break() throws IOException {
+        ScriptLoader loader = new ScriptLoader(StandardCharsets.ISO_8859_1);
+
+        assertEquals("db.users.insert({ name: 'José' });\n", loader.load(write("a.js", "db.users.insert({ name: 'José' });", StandardCharsets.ISO_8859_1)));
+        assertEquals("// last line\r\n", loader.load(write("b.js", "// last line\r\n", StandardCharsets.ISO_8859_1)));
+        assertEquals("\n", loader.load(write("c.js", "", StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test public void
+    should_load_mapped_large_scripts() throws IOException {
+        StringBuilder script = new StringBuilder();
+        while (script.length() < ScriptLoader.MAP_THRESHOLD) {
+            script.append("db.users.insert({ name: 'é' });\n");
+        }
+
+        assertEquals(script.toString(), new ScriptLoader(StandardCharsets.UTF_8).load(write("large.js", script.toString(), StandardCharsets.UTF_8)));
+    }
+
+    @Test public void
+    should_fail_on_text_not_in_charset() throws IOException {
+        File file = folder.newFile("invalid.js");
+        Files.write(file.toPath(), new byte[] { 'd', 'b', (byte) 0xC3, '(' });
+
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Script 'invalid.js' is not valid UTF-8");
+
+        new ScriptLoader(StandardCharsets.UTF_8).load(file);
+    }
+
+    @Test public void
+    should_stream_command_documents() throws IOException {
+        File file = write("commands.json", "// @database other\n{\"drop\": \"users\"}\n{\"insert\": \"users\", \"documents\": [{\"name\": \"José\"}]}", StandardCharsets.UTF_16);
+
+        try (JsonDocumentReader reader = new ScriptLoader(StandardCharsets.UTF_16).open(file)) {
+            assertEquals(BsonDocument.parse("{drop: 'users'}"), reader.next());
+            assertEquals(BsonDocument.parse("{insert: 'users', documents: [{name: 'José'}]}"), reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    private File write(String name, String content, Charset charset) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(charset));
+        return file;
+    }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class ScriptSchedulerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test public void
+    should_read_directives_from_leading_comments() throws IOException {
+        File file = folder.newFile("b.js");
+        Files.write(file.toPath(), "// seeds orders\n// @database orders\n// @dependsOn a.js, c.json\ndb.orders.insert({});\n// @database ignored\n".getBytes(StandardCharsets.UTF_8));
+
+        Script script = Script.read(file, StandardCharsets.UTF_8);
+
+        assertEquals("orders", script.getDatabase());
+        assertEquals(asList("a.js", "c.json"), script.getDependsOn());
+    }
+
+    @Test public void
+    should_run_in_name_order_without_grouping() throws Exception {
+        List<String> order = run(ScriptScheduler.Grouping.NONE,
+                script("c.js", null), script("a.js", null, "b.js"), script("b.js", null));
+
+        assertEquals(asList("b.js", "a.js", "c.js"), order);
+    }
+
+    @Test public void
+    should_run_scripts_after_their_dependencies() throws Exception {
+        List<String> order = run(ScriptScheduler.Grouping.DEPENDENCIES,
+                script("a.js", null, "c.js"), script("b.js", null, "a.js"), script("c.js", null));
+
+        assertEquals(asList("c.js", "a.js", "b.js"), order);
+    }
+
+    @Test public void
+    should_run_databases_concurrently() throws Exception {
+        // each script waits for the other database's script to start
+        CountDownLatch started = new CountDownLatch(2);
+        List<Script> scripts = asList(script("a.js", "one"), script("b.js", "two"));
+
+        new ScriptScheduler(ScriptScheduler.Grouping.DATABASE, 2, "db").runAll(scripts, script -> {
+            started.countDown();
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+        });
+    }
+
+    @Test public void
+    should_order_scripts_for_the_same_database() throws Exception {
+        ScriptScheduler scheduler = new ScriptScheduler(ScriptScheduler.Grouping.DATABASE, 2, "db");
+        Script a = script("a.js", null);
+        Script b = script("b.js", "other");
+        Script c = script("c.js", "db");
+
+        assertEquals(asList(c), scheduler.dependents(asList(a, b, c)).get(a));
+        assertEquals(emptyList(), scheduler.dependents(asList(a, b, c)).get(b));
+    }
+
+    @Test public void
+    should_fail_on_circular_dependencies() throws Exception {
+        thrown.expect(MojoFailureException.class);
+        thrown.expectMessage("circular dependencies");
+
+        run(ScriptScheduler.Grouping.DEPENDENCIES, script("a.js", null, "b.js"), script("b.js", null, "a.js"));
+    }
+
+    @Test public void
+    should_fail_on_unknown_dependency() throws Exception {
+        thrown.expect(MojoFailureException.class);
+        thrown.expectMessage("Script 'a.js' depends on 'missing.js'");
+
+        run(ScriptScheduler.Grouping.DEPENDENCIES, script("a.js", null, "missing.js"));
+    }
+
+    @Test public void
+    should_stop_at_first_failure() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("a.js failed");
+
+        try {
+            new ScriptScheduler(ScriptScheduler.Grouping.NONE, 0, "db").runAll(asList(script("a.js", null), script("b.js", null)), script -> {
+                order.add(script.getName());
+                throw new MojoExecutionException(script.getName() + " failed");
+            });
+        } finally {
+            assertEquals(asList("a.js"), order);
+        }
+    }
+
+    private static List<String> run(ScriptScheduler.Grouping grouping, Script... scripts) throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        new ScriptScheduler(grouping, 1, "db").runAll(asList(scripts), script -> order.add(script.getName()));
+        return order;
+    }
+
+    private static Script script(String name, String database, String... dependsOn) {
+        return new Script(new File(name), database, asList(dependsOn));
+    }
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.bson.Document;
+import org.junit.Test;
+
+public class ShardedClusterTest {
+
+    @Test public void
+    should_shard_collection_on_ranged_key() {
+        Document command = ShardedCluster.shardCollectionCommand(new ShardedCollectionConfig("db", "users", "userId", false), 2);
+
+        assertEquals(new Document("shardCollection", "db.users").append("key", new Document("userId", 1)), command);
+    }
+
+    @Test public void
+    should_create_initial_chunks_for_hashed_key() {
+        Document command = ShardedCluster.shardCollectionCommand(new ShardedCollectionConfig("db", "users", "userId", true), 3);
+
+        assertEquals(new Document("shardCollection", "db.users")
+                .append("key", new Document("userId", "hashed"))
+                .append("numInitialChunks", 3 * ShardedCluster.INITIAL_CHUNKS_PER_SHARD), command);
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.flapdoodle.embed.mongo.MongodProcess;
+
+public class SharedMongodTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_start_once_and_reuse() throws Exception {
+        final MongodProcess process = runningProcess();
+        final AtomicInteger starts = new AtomicInteger();
+
+        SharedMongod first = SharedMongod.acquire("reuse", () -> {
+            starts.incrementAndGet();
+            return process;
+        });
+        SharedMongod second = SharedMongod.acquire("reuse", () -> {
+            starts.incrementAndGet();
+            return process;
+        });
+
+        assertSame(first, second);
+        assertSame(process, second.getProcess());
+        assertEquals(1, starts.get());
+        assertEquals(2, second.getReferences());
+    }
+
+    @Test public void
+    should_stop_only_after_last_release() throws Exception {
+        MongodProcess process = runningProcess();
+        SharedMongod.acquire("release", () -> process);
+        SharedMongod.acquire("release", () -> process);
+
+        assertNull(SharedMongod.release("release", false));
+        assertSame(process, SharedMongod.release("release", false).getProcess());
+    }
+
+    @Test public void
+    should_keep_idle_instance_for_later_modules() throws Exception {
+        MongodProcess process = runningProcess();
+        SharedMongod.acquire("idle", () -> process);
+
+        assertNull(SharedMongod.release("idle", true));
+
+        SharedMongod reused = SharedMongod.acquire("idle", () -> {
+            throw new AssertionError("should reuse the idle instance");
+        });
+        assertEquals(1, reused.getReferences());
+        assertNotNull(SharedMongod.release("idle", false));
+    }
+
+    @Test public void
+    should_restart_instance_that_died() throws Exception {
+        MongodProcess dead = mock(MongodProcess.class);
+        MongodProcess restarted = runningProcess();
+        SharedMongod.acquire("dead", () -> dead);
+
+        assertSame(restarted, SharedMongod.acquire("dead", () -> restarted).getProcess());
+    }
+
+    @Test public void
+    should_keep_port_leases_of_starting_module_until_last_release() throws Exception {
+        MongodProcess process = runningProcess();
+        PortAllocator.Lease lease = PortAllocator.forRange(folder.getRoot(), null).reserve();
+        List<PortAllocator.Lease> leases = new ArrayList<PortAllocator.Lease>(Collections.singletonList(lease));
+        SharedMongod.acquire("leases", () -> process).takePortLeases(leases);
+        SharedMongod.acquire("leases", () -> process);
+
+        assertTrue(leases.isEmpty());
+        assertNull(SharedMongod.release("leases", false));
+        SharedMongod released = SharedMongod.release("leases", false);
+        assertEquals(Collections.singletonList(lease), released.getPortLeases());
+
+        StartMojo.releasePorts(released.getPortLeases());
+        try (PortAllocator.Lease again = new PortAllocator(folder.getRoot(), lease.getPort(), lease.getPort()).reserve()) {
+            assertEquals(lease.getPort(), again.getPort());
+        }
+    }
+
+    private static MongodProcess runningProcess() {
+        MongodProcess process = mock(MongodProcess.class);
+        given(process.isProcessRunning()).willReturn(true);
+        return process;
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.spy;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.plugin.testing.MojoRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class StartMojoTest {
+
+    @Rule
+    public MojoRule rule = new MojoRule();
+
+    @Test public void
+    should_not_hand_over_a_process_in_daemon_mode() throws Exception {
+        // maven hands plugins a ConcurrentHashMap, which rejects null values
+        Map<Object, Object> context = new ConcurrentHashMap<Object, Object>();
+        StartMojo mojo = spy((StartMojo) rule.lookupMojo("start", new File("src/test/resources/daemon/pom.xml")));
+        mojo.setPluginContext(context);
+        doNothing().when(mojo).startOrAttachDaemon();
+
+        try {
+            mojo.executeStart();
+        } finally {
+            ((MongoClientRegistry) context.get(StartMojo.CLIENT_REGISTRY_CONTEXT_PROPERTY_NAME)).close();
+        }
+
+        assertFalse(context.containsKey(StartMojo.MONGOD_CONTEXT_PROPERTY_NAME));
+        assertTrue(context.containsKey(StartMojo.PORT_LEASES_CONTEXT_PROPERTY_NAME));
+    }
+
+    @Test public void
+    should_create_temporary_data_directory_for_stop_to_delete() throws Exception {
+        Map<Object, Object> context = new ConcurrentHashMap<Object, Object>();
+        StartMojo mojo = (StartMojo) rule.lookupMojo("start", new File("src/test/resources/daemon/pom.xml"));
+        mojo.setPluginContext(context);
+
+        File directory = mojo.getDatabaseDirectory();
+        try {
+            assertTrue(directory.isDirectory());
+            assertEquals(directory, context.get(StartMojo.TEMP_DATA_DIRECTORY_CONTEXT_PROPERTY_NAME));
+        } finally {
+            Files.delete(directory.toPath());
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.bson.Document;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.flapdoodle.embed.process.distribution.Distribution;
+import de.flapdoodle.embed.process.store.IArtifactStore;
+
+public class StartupReportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test public void
+    should_time_download_and_extraction_through_artifact_store() throws IOException {
+        StartupReport report = new StartupReport("3.6.5", "wiredTiger");
+        IArtifactStore delegate = mock(IArtifactStore.class);
+        given(delegate.checkDistribution(null)).willReturn(true);
+
+        IArtifactStore timed = report.timed(delegate);
+        assertTrue(timed.checkDistribution(null));
+        timed.extractFileSet((Distribution) null);
+        timed.extractFileSet((Distribution) null);
+
+        assertEquals(2, report.getPhases().size());
+        assertTrue(report.getPhases().containsKey(StartupReport.DOWNLOAD));
+        assertTrue(report.getPhases().containsKey(StartupReport.EXTRACT));
+    }
+
+    @Test public void
+    should_write_machine_readable_report() throws IOException {
+        StartupReport report = new StartupReport("3.6.5", "wiredTiger");
+        report.addPhase(StartupReport.DOWNLOAD, System.nanoTime());
+        report.addInstance(27017, 120, 15);
+        report.addInstance(27018, 130, 20);
+
+        File file = new File(folder.getRoot(), "target/embedmongo-startup.json");
+        report.write(file);
+
+        Document json = Document.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals("3.6.5", json.getString("version"));
+        assertEquals("wiredTiger", json.getString("storageEngine"));
+        assertTrue(((Document) json.get("phases")).containsKey(StartupReport.DOWNLOAD));
+        List<?> instances = (List<?>) json.get("instances");
+        assertEquals(2, instances.size());
+        assertEquals(27018, ((Document) instances.get(1)).getInteger("port").intValue());
+        assertEquals(20L, ((Number) ((Document) instances.get(1)).get("ping")).longValue());
+    }
+
+    @Test public void
+    should_back_off_exponentially_up_to_a_limit() {
+        assertEquals(2 * ReadinessProbe.INITIAL_BACKOFF_MILLIS, ReadinessProbe.nextBackoff(ReadinessProbe.INITIAL_BACKOFF_MILLIS));
+        assertEquals(ReadinessProbe.MAX_BACKOFF_MILLIS, ReadinessProbe.nextBackoff(ReadinessProbe.MAX_BACKOFF_MILLIS));
+    }
+
+    @Test(expected = MojoExecutionException.class) public void
+    should_give_up_when_nothing_answers_ping() throws MojoExecutionException {
+        ReadinessProbe.awaitPing("localhost", NetworkUtils.allocateRandomPort(), 200);
+    }
+
+}
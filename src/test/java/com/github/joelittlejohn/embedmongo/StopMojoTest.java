@@ -0,0 +1,123 @@
+/**
+ * Copyright © 2012 Joe Littlejohn
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.joelittlejohn.embedmongo;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.plugin.descriptor.PluginDescriptorBuilder;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class StopMojoTest {
+
+    @Rule
+    public MojoRule rule = new MojoRule();
+
+    private MavenProject first;
+    private MavenProject later;
+    private StopMojo stop;
+    private Map<String, String> settings;
+
+    @Before
+    public void setUp() throws Exception {
+        File pom = new File("src/test/resources/shared/first/pom.xml");
+        first = project(pom);
+        later = project(new File("src/test/resources/shared/later/pom.xml"));
+
+        stop = (StopMojo) rule.lookupEmptyMojo("stop", pom);
+        rule.setVariableValueToObject(stop, "project", first);
+        rule.setVariableValueToObject(stop, "reactorProjects", Arrays.asList(first, later));
+        try (Reader descriptor = new FileReader("target/classes/META-INF/maven/plugin.xml")) {
+            rule.setVariableValueToObject(stop, "plugin", new PluginDescriptorBuilder().build(descriptor));
+        }
+
+        StartMojo start = (StartMojo) rule.lookupMojo("start", pom);
+        rule.setVariableValueToObject(start, "project", first);
+        // lookupMojo does not apply parameter defaults
+        rule.setVariableValueToObject(start, "storageEngine", "mmapv1");
+        settings = start.getSharedSettings();
+    }
+
+    @Test public void
+    should_keep_shared_mongod_for_later_module_with_same_settings() {
+        assertTrue(stop.isReusedByLaterModule(settings));
+    }
+
+    @Test public void
+    should_stop_shared_mongod_when_later_module_uses_another_port() {
+        laterConfiguration().getChild("port").setValue("37018");
+
+        assertFalse(stop.isReusedByLaterModule(settings));
+    }
+
+    @Test public void
+    should_stop_shared_mongod_when_later_module_does_not_share() {
+        laterConfiguration().getChild("shared").setValue("false");
+
+        assertFalse(stop.isReusedByLaterModule(settings));
+    }
+
+    @Test public void
+    should_stop_shared_mongod_when_later_module_is_skipped() {
+        Xpp3Dom skip = new Xpp3Dom("skip");
+        skip.setValue("true");
+        laterConfiguration().addChild(skip);
+
+        assertFalse(stop.isReusedByLaterModule(settings));
+    }
+
+    @Test public void
+    should_resolve_later_module_properties() {
+        laterConfiguration().getChild("port").setValue("${mongo.port}");
+        later.getProperties().setProperty("mongo.port", "37017");
+
+        assertTrue(stop.isReusedByLaterModule(settings));
+    }
+
+    @Test public void
+    should_stop_shared_mongod_when_later_module_property_is_not_set() {
+        laterConfiguration().getChild("port").setValue("${mongo.port}");
+
+        assertFalse(stop.isReusedByLaterModule(settings));
+    }
+
+    private static MavenProject project(File pom) throws Exception {
+        try (Reader reader = new FileReader(pom)) {
+            MavenProject project = new MavenProject(new MavenXpp3Reader().read(reader));
+            project.setFile(pom);
+            return project;
+        }
+    }
+
+    private Xpp3Dom laterConfiguration() {
+        Plugin plugin = later.getBuild().getPluginsAsMap().get(PluginExecutions.GROUP_ID + ":" + PluginExecutions.ARTIFACT_ID);
+        return (Xpp3Dom) plugin.getExecutions().get(0).getConfiguration();
+    }
+
+}